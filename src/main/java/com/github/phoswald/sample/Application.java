@@ -1,249 +1,859 @@
 package com.github.phoswald.sample;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
-import java.nio.ByteBuffer;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
-import jakarta.json.bind.Jsonb;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
 import jakarta.json.bind.JsonbBuilder;
-import jakarta.xml.bind.JAXB;
-
+import jakarta.json.bind.JsonbConfig;
+import jakarta.json.bind.JsonbException;
+import jakarta.json.bind.serializer.JsonbSerializer;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.compression.gzip.GzipCompression;
+import org.eclipse.jetty.compression.server.CompressionConfig;
+import org.eclipse.jetty.compression.server.CompressionHandler;
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.HttpException;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.GracefulHandler;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Fields;
+import org.eclipse.jetty.util.UrlEncoded;
 import org.eclipse.jetty.util.resource.ResourceFactory;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.yasson.YassonJsonb;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.phoswald.sample.health.HealthResource;
+import com.github.phoswald.sample.sample.EchoJson;
 import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
 import com.github.phoswald.sample.sample.SampleController;
 import com.github.phoswald.sample.sample.SampleResource;
+import com.github.phoswald.sample.sample.SampleView;
 import com.github.phoswald.sample.task.TaskController;
+import com.github.phoswald.sample.task.TaskEditView;
 import com.github.phoswald.sample.task.TaskEntity;
+import com.github.phoswald.sample.task.TaskEntityJson;
+import com.github.phoswald.sample.task.TaskListView;
 import com.github.phoswald.sample.task.TaskResource;
+import com.github.phoswald.sample.task.TaskView;
+import com.github.phoswald.sample.utils.AbstractView;
+import com.github.phoswald.sample.utils.BodyReader;
 import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.EventStream;
+import com.github.phoswald.sample.utils.HtmlPage;
+import com.github.phoswald.sample.utils.HttpResult;
+import com.github.phoswald.sample.utils.Metrics;
+import com.github.phoswald.sample.utils.PoolMetrics;
+import com.github.phoswald.sample.utils.RateLimiter;
+import com.github.phoswald.sample.utils.ResponseOutputStream;
+import com.github.phoswald.sample.utils.Router;
+import com.github.phoswald.sample.utils.XmlCodec;
 
 public class Application {
 
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
-    private static final Jsonb json = JsonbBuilder.create();
-
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final Map<Class<?>, JsonbSerializer<Object>> serializers = (Map) Map.of( //
+            TaskEntity.class, new TaskEntityJson.Serializer(), //
+            EchoResponse.class, new EchoJson.ResponseSerializer());
+    private static final YassonJsonb json = (YassonJsonb) JsonbBuilder.create(new JsonbConfig() //
+            .withSerializers(serializers.values().toArray(JsonbSerializer[]::new)) //
+            .withDeserializers(new TaskEntityJson.Deserializer(), new EchoJson.RequestDeserializer()));
+    private static final JsonGeneratorFactory generators = Json.createGeneratorFactory(Map.of());
+    private static final XmlCodec xml = new XmlCodec(EchoRequest.class, EchoResponse.class);
+    // request headers passed to handlers as parameters, by their lower case names
+    private static final List<String> HEADER_PARAMS = List.of("if-match", "if-none-match", "last-event-id");
+    // the user is identified by a header set by the client or a proxy in front, and passed to handlers like a header
+    private static final String USER_PARAM = "x-user-id";
+    private static final String DEFAULT_USER = "guest";
+    private static final Pattern USER_PATTERN = Pattern.compile("[A-Za-z0-9._@-]{1,64}");
+    // paths of the routes whose requests count against the rate limit of their user
+    private static final List<String> RATE_LIMITED_PATHS = List.of("/app/rest/tasks", "/app/pages/tasks");
+
+    private final ConfigProvider config;
     private final int port;
+    private final boolean h2c;
+    private final Integer httpsPort;
+    private final boolean virtualThreads;
+    private final int maxBodySize;
+    private final int compressionMinSize;
+    private final String compressionMimeTypes;
     private final SampleResource sampleResource;
     private final SampleController sampleController;
     private final TaskResource taskResource;
     private final TaskController taskController;
+    private final PoolMetrics poolMetrics;
+    private final Metrics metrics;
+    private final HealthResource healthResource;
+    private final RateLimiter rateLimiter;
+    private final long shutdownDelay;
+    private final long shutdownTimeout;
+    private final long eventsHeartbeat;
+    private final int eventsMaxQueue;
+    private final CompletableFuture<?> persistence;
+    private final Set<EventStream> eventStreams = ConcurrentHashMap.newKeySet();
 
     private Server server;
+    private ExecutorService executor;
 
     public Application( //
             ConfigProvider config, //
             SampleResource sampleResource, //
             SampleController sampleController, //
             TaskResource taskResource, //
-            TaskController taskController) {
+            TaskController taskController, //
+            PoolMetrics poolMetrics, //
+            Metrics metrics, //
+            HealthResource healthResource, //
+            RateLimiter rateLimiter, //
+            CompletableFuture<?> persistence) {
+        this.config = config;
         this.port = Integer.parseInt(config.getConfigProperty("app.http.port").orElse("8080"));
+        this.h2c = Boolean.parseBoolean(config.getConfigProperty("app.http.h2c").orElse("true"));
+        this.httpsPort = config.getConfigProperty("app.https.port").map(Integer::valueOf).orElse(null);
+        this.virtualThreads = Objects.equals(config.getConfigProperty("app.http.executor").orElse("platform"), "virtual");
+        this.maxBodySize = Integer.parseInt(config.getConfigProperty("app.http.max-body-size").orElse("10485760"));
+        this.compressionMinSize = Integer.parseInt(config.getConfigProperty("app.http.compression.min-size").orElse("1024"));
+        this.compressionMimeTypes = config.getConfigProperty("app.http.compression.mime-types")
+                .orElse("text/html,text/plain,text/xml,text/css,application/json,application/x-ndjson,application/javascript");
         this.sampleResource = sampleResource;
         this.sampleController = sampleController;
         this.taskResource = taskResource;
         this.taskController = taskController;
+        this.poolMetrics = poolMetrics;
+        this.metrics = metrics;
+        this.healthResource = healthResource;
+        this.rateLimiter = rateLimiter;
+        this.shutdownDelay = Long.parseLong(config.getConfigProperty("app.shutdown.delay").orElse("0"));
+        this.shutdownTimeout = Long.parseLong(config.getConfigProperty("app.shutdown.timeout").orElse("30000"));
+        this.eventsHeartbeat = Long.parseLong(config.getConfigProperty("app.events.heartbeat").orElse("15000"));
+        this.eventsMaxQueue = Integer.parseInt(config.getConfigProperty("app.events.max-queue").orElse("1000"));
+        this.persistence = persistence;
     }
 
     public static void main(String[] args) throws Exception {
         var module = new ApplicationModule();
-        module.getApplication().start();
+        var application = module.getApplication();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                application.stop();
+            } catch (Exception e) {
+                logger.warn("Stopping failed", e);
+            } finally {
+                module.close();
+            }
+        }, "shutdown"));
+        application.start();
+        if (Boolean.parseBoolean(module.getConfigProvider().getConfigProperty("app.startup.exit").orElse("false"))) {
+            System.exit(0); // training run for the class data archive, the shutdown hook stops the application
+        }
     }
 
+    /**
+     * Starts the server and returns when it is ready, which includes waiting for the persistence bootstrap that runs
+     * in parallel. Logs how long each phase took. If the bootstrap fails, stops the server again and throws.
+     */
     void start() throws Exception {
-        logger.info("sample-jetty is starting, port=" + port);
+        long jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        long startNanos = System.nanoTime();
+        logger.info("sample-jetty is starting, port=" + port + ", h2c=" + h2c + ", httpsPort=" + httpsPort + ", virtualThreads=" + virtualThreads);
 
-        server = new Server(port);
-        server.setHandler(routes( //
-                files("/resources"), //
-                get("/app/rest/sample/time", createHandler(params -> sampleResource.getTime())), //
-                get("/app/rest/sample/config", createHandler(params -> sampleResource.getConfig())), //
-                post("/app/rest/sample/echo-xml", createXmlHandler(EchoRequest.class, (params, reqBody) -> sampleResource.postEcho(reqBody))), //
-                post("/app/rest/sample/echo-json", createJsonHandler(EchoRequest.class, (params, reqBody) -> sampleResource.postEcho(reqBody))), //
-                get("/app/rest/tasks", createJsonHandler(params -> taskResource.getTasks())), //
-                post("/app/rest/tasks", createJsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.postTasks(reqBody))), //
-                get("/app/rest/tasks/([0-9a-z-]+)", createJsonHandler(params -> taskResource.getTask(params.get("1" /* "id" */)))), //
-                put("/app/rest/tasks/([0-9a-z-]+)", createJsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.putTask(params.get("1" /* "id" */), reqBody))), //
-                delete("/app/rest/tasks/([0-9a-z-]+)", createJsonHandler(params -> taskResource.deleteTask(params.get("1" /* "id" */)))), //
-                get("/app/pages/sample", createHtmlHandler(params -> sampleController.getSamplePage())), //
-                get("/app/pages/tasks", createHtmlHandler(params -> taskController.getTasksPage())), //
-                post("/app/pages/tasks", createHtmlHandler(params -> taskController.postTasksPage(params.get("title"), params.get("description")))), //
-                get("/app/pages/tasks/([0-9a-z-]+)", createHtmlHandler(params -> taskController.getTaskPage(params.get("1" /* "id" */), params.get("action")))), //
-                post("/app/pages/tasks/([0-9a-z-]+)", createHtmlHandler(params -> taskController.postTaskPage(params.get("1" /* "id" */), params.get("action"), params.get("title"), params.get("description"), params.get("done")))) //
-        ));
+        AbstractView.configure(config, metrics);
+        List.of(new SampleView(), new TaskListView(), new TaskView(), new TaskEditView()).forEach(AbstractView::warmUp);
+        long templatesNanos = System.nanoTime();
+
+        if (virtualThreads) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        server = new Server();
+        addConnectors(server);
+        server.setStopTimeout(shutdownTimeout);
+        registerThreadPoolMetrics((QueuedThreadPool) server.getThreadPool());
+        metrics.gauge("app_task_event_streams", "Open task event streams.", eventStreams::size);
+        server.setHandler(new GracefulHandler(compression(routes(files("/resources"), createRoutes()))));
         server.start();
+        scheduleHeartbeat(server.getScheduler());
+        long serverNanos = System.nanoTime();
+        try {
+            persistence.join();
+        } catch (CompletionException e) {
+            // without a database, the server must not keep running and report to be alive
+            logger.error("Persistence bootstrap failed, stopping");
+            server.stop();
+            if (executor != null) {
+                executor.close();
+            }
+            throw e;
+        }
+        long persistenceNanos = System.nanoTime();
+        healthResource.setReady(true);
+        logger.info("sample-jetty is ready after " + (jvmMillis + millis(startNanos, persistenceNanos)) + " ms: jvm=" + jvmMillis
+                + ", templates=" + millis(startNanos, templatesNanos) + ", server=" + millis(templatesNanos, serverNanos)
+                + ", persistence-wait=" + millis(serverNanos, persistenceNanos));
     }
 
+    /**
+     * Stops gracefully: reports not ready, waits <code>app.shutdown.delay</code> for load balancers to notice, stops
+     * accepting connections, and waits up to <code>app.shutdown.timeout</code> for active requests to complete. Event
+     * streams never complete by themselves, so they are closed first; clients reconnect to another instance.
+     */
     void stop() throws Exception {
+        logger.info("sample-jetty is stopping, delay=" + shutdownDelay + ", timeout=" + shutdownTimeout);
+        healthResource.setReady(false);
+        if (shutdownDelay > 0) {
+            Thread.sleep(shutdownDelay);
+        }
+        eventStreams.forEach(EventStream::close);
         server.stop();
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    /**
+     * Pings the open event streams periodically, on the scheduler of the server rather than a thread of their own.
+     */
+    private void scheduleHeartbeat(Scheduler scheduler) {
+        scheduler.schedule(() -> {
+            eventStreams.forEach(EventStream::ping);
+            if (server.isRunning()) {
+                scheduleHeartbeat(scheduler);
+            }
+        }, eventsHeartbeat, TimeUnit.MILLISECONDS);
     }
 
-    private static Handler routes(Handler... routes) {
+    private static long millis(long startNanos, long endNanos) {
+        return (endNanos - startNanos) / 1000000;
+    }
+
+    /**
+     * Returns the routes of the application, in the order they are registered. Package-private, so benchmarks can
+     * dispatch the actual route table.
+     */
+    List<Route> createRoutes() {
+        return List.of( //
+                get("/app/rest/sample/time", createHandler(params -> sampleResource.getTime())), //
+                get("/app/rest/sample/config", createHandler(params -> sampleResource.getConfig())), //
+                post("/app/rest/sample/echo-xml", createXmlHandler(EchoRequest.class, (params, reqBody) -> sampleResource.postEcho(reqBody))), //
+                post("/app/rest/sample/echo-json", createJsonHandler(EchoRequest.class, (params, reqBody) -> sampleResource.postEcho(reqBody))), //
+                get("/app/rest/tasks", createJsonHandler(params -> taskResource.getTasks(params.get("x-user-id"), params.get("after"), params.get("limit"), params.get("if-none-match")))), //
+                post("/app/rest/tasks", createJsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.postTasks(params.get("x-user-id"), reqBody))), //
+                post("/app/rest/tasks/batch", createJsonHandler(TaskEntity[].class, (params, reqBody) -> taskResource.postTasksBatch(params.get("x-user-id"), reqBody))), //
+                put("/app/rest/tasks/batch", createJsonHandler(TaskEntity[].class, (params, reqBody) -> taskResource.putTasksBatch(params.get("x-user-id"), reqBody))), //
+                delete("/app/rest/tasks/batch", createJsonHandler(String[].class, (params, reqBody) -> taskResource.deleteTasksBatch(params.get("x-user-id"), reqBody))), //
+                get("/app/rest/tasks/search", createJsonHandler(params -> taskResource.searchTasks(params.get("x-user-id"), params.get("q"), params.get("done"), params.get("from"), params.get("to"), params.get("after"), params.get("limit")))), //
+                get("/app/rest/tasks/events", createEventStreamHandler((params, stream) -> taskResource.subscribeTaskEvents(params.get("x-user-id"), params.get("last-event-id"),
+                        event -> stream.send(Long.toString(event.id()), event.type(), event.data())))), //
+                get("/app/rest/tasks/export", createNdjsonHandler(params -> taskResource.exportTasks(params.get("x-user-id")))), //
+                postStreaming("/app/rest/tasks/import", createNdjsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.importTasks(params.get("x-user-id"), reqBody))), //
+                get("/app/rest/tasks/{id}", createJsonHandler(params -> taskResource.getTask(params.get("x-user-id"), params.get("id"), params.get("if-none-match")))), //
+                put("/app/rest/tasks/{id}", createJsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.putTask(params.get("x-user-id"), params.get("id"), params.get("if-match"), reqBody))), //
+                patch("/app/rest/tasks/{id}", createJsonHandler(TaskEntity.class, (params, reqBody) -> taskResource.patchTask(params.get("x-user-id"), params.get("id"), params.get("if-match"), reqBody))), //
+                delete("/app/rest/tasks/{id}", createJsonHandler(params -> taskResource.deleteTask(params.get("x-user-id"), params.get("id")))), //
+                get("/app/rest/metrics/jdbc-pool", createJsonHandler(params -> poolMetrics.snapshot())), //
+                get("/app/metrics", createMetricsHandler(metrics)), //
+                get("/app/health/live", createJsonHandler(params -> healthResource.getLive())), //
+                get("/app/health/ready", createJsonHandler(params -> healthResource.getReady())), //
+                get("/app/pages/sample", createHtmlHandler(params -> sampleController.getSamplePage())), //
+                get("/app/pages/tasks", createHtmlHandler(params -> taskController.getTasksPage(params.get("x-user-id"), params.get("after"), params.get("q")))), //
+                post("/app/pages/tasks", createHtmlHandler(params -> taskController.postTasksPage(params.get("x-user-id"), params.get("title"), params.get("description")))), //
+                get("/app/pages/tasks/{id}", createHtmlHandler(params -> taskController.getTaskPage(params.get("x-user-id"), params.get("id"), params.get("action"), params.get("if-none-match")))), //
+                post("/app/pages/tasks/{id}", createHtmlHandler(params -> taskController.postTaskPage(params.get("x-user-id"), params.get("id"), params.get("action"), params.get("title"), params.get("description"), params.get("done"), params.get("version")))) //
+        );
+    }
+
+    private Handler routes(Handler files, List<Route> routes) {
+        Router<MeteredRoute> router = new Router<>();
+        routes.forEach(route -> router.add(route.method(), route.path(), new MeteredRoute(route)));
         Handler.Sequence handlers = new Handler.Sequence();
-        Arrays.asList(routes).forEach(handlers::addHandler);
+        handlers.addHandler(dispatch(router));
+        handlers.addHandler(files);
         return handlers;
     }
 
+    /**
+     * Adds the cleartext connector for HTTP/1.1 and, unless disabled, HTTP/2 (h2c, by prior knowledge or upgrade).
+     * If an HTTPS port is configured, also adds a TLS connector that negotiates HTTP/2 or HTTP/1.1 using ALPN.
+     */
+    private void addConnectors(Server server) {
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfig);
+        ServerConnector connector = h2c
+                ? new ServerConnector(server, http1, configureHttp2(new HTTP2CServerConnectionFactory(httpConfig)))
+                : new ServerConnector(server, http1);
+        connector.setPort(port);
+        server.addConnector(connector);
+
+        if (httpsPort != null) {
+            SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
+            sslContextFactory.setKeyStorePath(config.getConfigProperty("app.https.keystore").orElse("keystore.p12"));
+            sslContextFactory.setKeyStorePassword(config.getConfigProperty("app.https.keystore-password").orElse(""));
+            sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+
+            HttpConfiguration httpsConfig = new HttpConfiguration(httpConfig);
+            httpsConfig.addCustomizer(new SecureRequestCustomizer());
+            ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+            alpn.setDefaultProtocol(HttpVersion.HTTP_1_1.asString());
+            ServerConnector tlsConnector = new ServerConnector(server, //
+                    new SslConnectionFactory(sslContextFactory, alpn.getProtocol()), //
+                    alpn, //
+                    configureHttp2(new HTTP2ServerConnectionFactory(httpsConfig)), //
+                    new HttpConnectionFactory(httpsConfig));
+            tlsConnector.setPort(httpsPort);
+            server.addConnector(tlsConnector);
+        }
+    }
+
+    private AbstractHTTP2ServerConnectionFactory configureHttp2(AbstractHTTP2ServerConnectionFactory factory) {
+        factory.setMaxConcurrentStreams(Integer.parseInt(config.getConfigProperty("app.http2.max-concurrent-streams").orElse("128")));
+        factory.setInitialStreamRecvWindow(Integer.parseInt(config.getConfigProperty("app.http2.stream-window").orElse("524288")));
+        factory.setInitialSessionRecvWindow(Integer.parseInt(config.getConfigProperty("app.http2.session-window").orElse("1048576")));
+        return factory;
+    }
+
+    /**
+     * Compresses responses if the client accepts gzip, unless they are small, of another MIME type, or already
+     * compressed (like the precompressed static files).
+     */
+    private Handler compression(Handler handler) {
+        GzipCompression gzip = new GzipCompression();
+        gzip.setMinCompressSize(compressionMinSize);
+        CompressionConfig.Builder config = CompressionConfig.builder().defaults();
+        for (String mimeType : compressionMimeTypes.split(",")) {
+            config.compressIncludeMimeType(mimeType.trim());
+        }
+        CompressionHandler compressionHandler = new CompressionHandler(handler);
+        compressionHandler.putCompression(gzip);
+        compressionHandler.putConfiguration("/", config.build());
+        return compressionHandler;
+    }
+
+    /**
+     * Serves static files, and their <code>.gz</code> variants created by the build if the client accepts gzip.
+     */
     private static Handler files(String classPath) {
         ResourceHandler handler = new ResourceHandler();
         handler.setBaseResource(ResourceFactory.of(handler).newClassLoaderResource(classPath, false));
         handler.setDirAllowed(false);
         handler.setWelcomeFiles(new String[] { "index.html" });
+        handler.setPrecompressedFormats(CompressedContentFormat.GZIP);
         return handler;
     }
 
-    private static Handler get(String path, MyHandler handler) {
-        return method(path, "GET", handler);
+    private static Route get(String path, MyHandler handler) {
+        return new Route("GET", path, handler, false);
     }
 
-    private static Handler post(String path, MyHandler handler) {
-        return method(path, "POST", handler);
+    private static Route post(String path, MyHandler handler) {
+        return new Route("POST", path, handler, false);
     }
 
-    private static Handler put(String path, MyHandler handler) {
-        return method(path, "PUT", handler);
+    /**
+     * Returns a route whose handler reads the request body itself (and is passed <code>null</code>), so the body is
+     * neither buffered nor subject to the maximum body size.
+     */
+    private static Route postStreaming(String path, MyHandler handler) {
+        return new Route("POST", path, handler, true);
     }
 
-    private static Handler delete(String path, MyHandler handler) {
-        return method(path, "DELETE", handler);
+    private static Route put(String path, MyHandler handler) {
+        return new Route("PUT", path, handler, false);
     }
 
-    private static Handler method(String path, String method, MyHandler handler) {
-        Pattern pattern = Pattern.compile("^" + path + "$");
+    private static Route patch(String path, MyHandler handler) {
+        return new Route("PATCH", path, handler, false);
+    }
+
+    private static Route delete(String path, MyHandler handler) {
+        return new Route("DELETE", path, handler, false);
+    }
+
+    private Handler dispatch(Router<MeteredRoute> router) {
         return new Handler.Abstract() {
             @Override
-            public boolean handle(Request request, Response response, Callback callback) throws Exception {
-                String target = request.getHttpURI().getPath();
-                Matcher matcher = pattern.matcher(target);
-                if (matcher.matches() && Objects.equals(request.getMethod(), method)) {
-                    Map<String, String> params = new HashMap<>();
-                    for (int i = 1; i <= matcher.groupCount(); i++) {
-                        params.put("" + i, matcher.group(i));
-                    }
-                    Fields fields = Request.getParameters(request);
-                    for (Fields.Field field : fields) {
-                        params.put(field.getName(), field.getValue());
-                    }
-                    logger.debug("Handling {} {} with {}", method, path, params);
-                    handler.handle(request, response, callback, params);
-                    callback.succeeded();
-                    return true;
-                } else {
+            public boolean handle(Request request, Response response, Callback callback) {
+                long startNanos = System.nanoTime();
+                Router.Match<MeteredRoute> match = router.match(request.getMethod(), request.getHttpURI().getPath());
+                if (match == null) {
                     return false;
                 }
+                String userId = request.getHeaders().get(USER_PARAM);
+                if (userId == null) {
+                    userId = DEFAULT_USER;
+                } else if (!USER_PATTERN.matcher(userId).matches()) {
+                    reject(match, response, callback, 400, startNanos);
+                    return true;
+                }
+                if (rateLimiter != null && isRateLimited(match.target().route().path()) && !rateLimiter.tryAcquire(userId)) {
+                    response.getHeaders().put(HttpHeader.RETRY_AFTER, "1");
+                    reject(match, response, callback, 429, startNanos);
+                    return true;
+                }
+                String user = userId;
+                if (match.target().route().streamingBody()) {
+                    execute(() -> invoke(match, request, response, callback, user, null, startNanos));
+                    return true;
+                }
+                BodyReader.read(request, maxBodySize).whenComplete((body, failure) -> {
+                    if (failure != null) {
+                        match.target().record(statusOf(failure), startNanos);
+                        callback.failed(failure);
+                    } else {
+                        execute(() -> invoke(match, request, response, callback, user, body, startNanos));
+                    }
+                });
+                return true;
             }
         };
     }
 
+    private static boolean isRateLimited(String path) {
+        return RATE_LIMITED_PATHS.stream().anyMatch(path::startsWith);
+    }
+
+    private static void reject(Router.Match<MeteredRoute> match, Response response, Callback callback, int status, long startNanos) {
+        response.setStatus(status);
+        match.target().record(status, startNanos);
+        callback.succeeded();
+    }
+
+    private void execute(Runnable task) {
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private static void invoke(Router.Match<MeteredRoute> match, Request request, Response response, Callback callback, String userId, byte[] body, long startNanos) {
+        try {
+            Route route = match.target().route();
+            Map<String, String> params = new HashMap<>();
+            for (Fields.Field field : Request.extractQueryParameters(request)) {
+                params.put(field.getName(), field.getValue());
+            }
+            if (body != null && isFormContent(request)) {
+                String form = new String(body, StandardCharsets.UTF_8);
+                UrlEncoded.decodeUtf8To(form, 0, form.length(), params::put);
+            }
+            for (String name : HEADER_PARAMS) {
+                String value = request.getHeaders().get(name);
+                if (value != null) {
+                    params.put(name, value);
+                }
+            }
+            params.putAll(match.variables()); // a query parameter or form field must not replace the path's ID
+            params.put(USER_PARAM, userId);
+            logger.debug("Handling {} {} with {}", route.method(), route.path(), params);
+            route.handler().handle(request, response, params, body, Callback.from(() -> {
+                match.target().record(response.getStatus(), startNanos);
+                callback.succeeded();
+            }, failure -> failed(match, request, response, callback, failure, startNanos)));
+        } catch (Throwable e) {
+            failed(match, request, response, callback, e, startNanos);
+        }
+    }
+
+    private static void failed(Router.Match<MeteredRoute> match, Request request, Response response, Callback callback, Throwable failure, long startNanos) {
+        if (failure instanceof EofException) {
+            // the client has gone, for example an HTTP/2 client that closes the connection after the last frame
+            logger.debug("Handling {} {} aborted by client", request.getMethod(), request.getHttpURI().getPath());
+            match.target().record(response.getStatus(), startNanos);
+        } else {
+            logger.warn("Handling {} {} failed", request.getMethod(), request.getHttpURI().getPath(), failure);
+            match.target().record(statusOf(failure), startNanos);
+        }
+        callback.failed(failure);
+    }
+
+    private static int statusOf(Throwable failure) {
+        return failure instanceof HttpException httpException ? httpException.getCode() : 500;
+    }
+
+    private void registerThreadPoolMetrics(QueuedThreadPool threadPool) {
+        metrics.gauge("app_jetty_threads", "Threads of the Jetty thread pool by state.", threadPool::getBusyThreads, "state", "busy");
+        metrics.gauge("app_jetty_threads", "Threads of the Jetty thread pool by state.", threadPool::getIdleThreads, "state", "idle");
+        metrics.gauge("app_jetty_threads_max", "Maximum number of threads of the Jetty thread pool.", threadPool::getMaxThreads);
+        metrics.gauge("app_jetty_queue_size", "Jobs waiting for a thread of the Jetty thread pool.", threadPool::getQueueSize);
+    }
+
+    private static boolean isFormContent(Request request) {
+        String contentType = request.getHeaders().get(HttpHeader.CONTENT_TYPE);
+        return contentType != null && contentType.startsWith(MimeTypes.Type.FORM_ENCODED.asString());
+    }
+
+    private static MyHandler createMetricsHandler(Metrics metrics) {
+        return (request, response, params, body, callback) -> {
+            response.getHeaders().add("content-type", "text/plain; version=0.0.4; charset=utf-8");
+            write(request, response, callback, stream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                metrics.write(writer);
+                writer.flush();
+            });
+        };
+    }
+
+    /**
+     * Returns a handler that keeps the response open as a stream of server-sent events. The handler function
+     * subscribes the stream and returns the action that unsubscribes it, which runs once the stream is closed by the
+     * server or the client. No thread is held while the stream is idle.
+     */
+    private MyHandler createEventStreamHandler(BiFunction<Map<String, String>, EventStream, Runnable> handler) {
+        return (request, response, params, body, callback) -> {
+            response.getHeaders().put(HttpHeader.CONTENT_TYPE, "text/event-stream; charset=utf-8");
+            response.getHeaders().put(HttpHeader.CACHE_CONTROL, "no-cache");
+            EventStream stream = new EventStream(response, callback, eventsMaxQueue);
+            eventStreams.add(stream);
+            stream.onClose(() -> eventStreams.remove(stream));
+            request.addFailureListener(stream::fail);
+            stream.ping(); // commits the response, so the client knows it is connected
+            stream.onClose(handler.apply(params, stream));
+        };
+    }
+
     private static MyHandler createHandler(Function<Map<String, String>, Object> handler) {
-        return (request, response, callback, params) -> {
+        return (request, response, params, body, callback) -> {
             Object result = handler.apply(params);
-            write(response, callback, result);
+            write(request, response, callback, stream -> writeText(stream, result));
         };
     }
 
     private static <R> MyHandler createXmlHandler(Class<R> reqClass, BiFunction<Map<String, String>, R, Object> handler) {
-        return (request, response, callback, params) -> handleXml(response, callback,
-                () -> handler.apply(params, deserializeXml(reqClass, read(request))));
+        return (request, response, params, body, callback) -> handleXml(request, response, callback,
+                () -> handler.apply(params, deserializeXml(reqClass, body)));
     }
 
-    private static void handleXml(Response response, Callback callback, Supplier<Object> handler) {
+    private static void handleXml(Request request, Response response, Callback callback, Supplier<Object> handler) throws Exception {
         Object result = handler.get();
         response.getHeaders().add("content-type", "text/xml");
-        write(response, callback, serializeXml(result));
+        write(request, response, callback, stream -> serializeXml(result, stream));
     }
 
     private static MyHandler createJsonHandler(Function<Map<String, String>, Object> handler) {
-        return (request, response, callback, params) -> handleJson(response, callback,
+        return (request, response, params, body, callback) -> handleJson(request, response, callback,
                 () -> handler.apply(params));
     }
 
     private static <R> MyHandler createJsonHandler(Class<R> reqClass, BiFunction<Map<String, String>, R, Object> handler) {
-        return (request, response, callback, params) -> handleJson(response, callback,
-                () -> handler.apply(params, deserializeJson(reqClass, read(request))));
+        return (request, response, params, body, callback) -> handleJson(request, response, callback,
+                () -> handler.apply(params, deserializeJson(reqClass, body)));
     }
 
-    private static void handleJson(Response response, Callback callback, Supplier<Object> handler) {
+    private static void handleJson(Request request, Response response, Callback callback, Supplier<Object> handler) throws Exception {
         Object result = handler.get();
-        if(result == null) {
+        if(result instanceof HttpResult httpResult) {
+            applyStatus(response, httpResult);
+            if(httpResult.body() != null) {
+                writeJson(request, response, callback, httpResult.body());
+            } else {
+                callback.succeeded();
+            }
+        } else if(result == null) {
             response.setStatus(404);
-        } else if(result instanceof String resultString) {
-            write(response, callback, resultString);
+            callback.succeeded();
         } else {
+            writeJson(request, response, callback, result);
+        }
+    }
+
+    private static void writeJson(Request request, Response response, Callback callback, Object result) throws Exception {
+        if(result instanceof String resultString) {
+            write(request, response, callback, stream -> writeText(stream, resultString));
+        } else if(result instanceof Stream<?> resultStream) {
             response.getHeaders().add("content-type", "application/json");
-            write(response, callback, serializeJson(result));
+            try(resultStream) {
+                write(request, response, callback, stream -> serializeJsonArray(resultStream, stream));
+            }
+        } else {
+            response.getHeaders().add("content-type", "application/json");
+            write(request, response, callback, stream -> serializeJson(result, stream));
         }
     }
 
+    private static MyHandler createNdjsonHandler(Function<Map<String, String>, Stream<?>> handler) {
+        return (request, response, params, body, callback) -> {
+            response.getHeaders().add("content-type", "application/x-ndjson");
+            try(Stream<?> result = handler.apply(params)) {
+                write(request, response, callback, stream -> serializeJsonLines(result, stream));
+            }
+        };
+    }
+
+    /**
+     * Returns a handler for a streaming route, which passes the body to the handler function as a stream of objects
+     * that are parsed line by line while it is consumed. Blank lines are skipped, and a line that is not an object
+     * fails the request with 400 and its line number.
+     */
+    private static <R> MyHandler createNdjsonHandler(Class<R> reqClass, BiFunction<Map<String, String>, Stream<R>, Object> handler) {
+        return (request, response, params, body, callback) -> {
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(Content.Source.asInputStream(request), StandardCharsets.UTF_8))) {
+                AtomicLong lineNumber = new AtomicLong();
+                Stream<R> reqBody = reader.lines().map(line -> {
+                    long number = lineNumber.incrementAndGet();
+                    return line.isBlank() ? null : deserializeJsonLine(reqClass, line, number);
+                }).filter(Objects::nonNull);
+                handleJson(request, response, callback, () -> handler.apply(params, reqBody));
+            }
+        };
+    }
+
     private static MyHandler createHtmlHandler(Function<Map<String, String>, Object> handler) {
-        return (request, response, callback, params) -> handleHtml(request, response, callback, () -> handler.apply(params));
+        return (request, response, params, body, callback) -> handleHtml(request, response, callback, () -> handler.apply(params));
     }
 
-    private static void handleHtml(Request request, Response response, Callback callback, Supplier<Object> handler) {
+    private static void handleHtml(Request request, Response response, Callback callback, Supplier<Object> handler) throws Exception {
         Object result = handler.get();
-        if(result instanceof Path resultPath) {
+        if(result instanceof HttpResult httpResult) {
+            applyStatus(response, httpResult);
+            if(httpResult.body() != null) {
+                writeHtml(request, response, callback, httpResult.body());
+            } else {
+                callback.succeeded();
+            }
+        } else if(result instanceof Path resultPath) {
             Response.sendRedirect(request, response, callback, resultPath.toString());
         } else {
-            response.getHeaders().add("content-type", "text/html");
-            write(response, callback, result);
+            writeHtml(request, response, callback, result);
+        }
+    }
+
+    private static void writeHtml(Request request, Response response, Callback callback, Object result) throws Exception {
+        response.getHeaders().add("content-type", "text/html");
+        if(result instanceof HtmlPage resultPage) {
+            write(request, response, callback, stream -> writePage(stream, resultPage));
+        } else {
+            write(request, response, callback, stream -> writeText(stream, result));
+        }
+    }
+
+    private static void applyStatus(Response response, HttpResult result) {
+        response.setStatus(result.status());
+        result.headers().forEach((name, value) -> response.getHeaders().put(name, value));
+    }
+
+    /**
+     * Streams the body produced by the given writer to the response, in chunks of the configured output buffer size.
+     * The last chunk is written without waiting, and the callback is completed once it has been sent.
+     */
+    private static void write(Request request, Response response, Callback callback, BodyWriter writer) throws Exception {
+        ResponseOutputStream stream = new ResponseOutputStream(request, response);
+        try {
+            writer.write(stream);
+        } catch (Exception e) {
+            stream.abort();
+            throw e;
+        }
+        stream.complete(callback);
+    }
+
+    private static void writeText(OutputStream stream, Object object) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        writer.write(object.toString());
+        writer.flush();
+    }
+
+    /**
+     * Renders the page through a UTF-8 encoder, so full chunks are sent while the template is still being processed.
+     * The template engine writes many small fragments, which are buffered before they reach the encoder.
+     */
+    private static void writePage(OutputStream stream, HtmlPage page) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        page.writeTo(writer);
+        writer.flush();
+    }
+
+    static void serializeXml(Object object, OutputStream stream) {
+        xml.marshal(object, stream);
+    }
+
+    static <T> T deserializeXml(Class<T> clazz, byte[] bytes) {
+        return xml.unmarshal(clazz, new ByteArrayInputStream(bytes));
+    }
+
+    static void serializeJson(Object object, OutputStream stream) {
+        json.toJson(object, stream);
+    }
+
+    /**
+     * Serializes an element of a stream. Types with a precomputed serializer are written directly, which saves
+     * setting up a Yasson serialization context per element. These serializers do not use the context.
+     */
+    private static void serializeJson(Object object, JsonGenerator generator) {
+        JsonbSerializer<Object> serializer = serializers.get(object.getClass());
+        if (serializer != null) {
+            serializer.serialize(object, generator, null);
+        } else {
+            json.toJson(object, generator);
         }
     }
 
-    private static void write(Response response, Callback callback, Object object) {
-        byte[] bytes = object.toString().getBytes(StandardCharsets.UTF_8);
-        response.write(true, ByteBuffer.wrap(bytes), callback);
+    static String serializeJsonToString(Object object) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try(JsonGenerator generator = generators.createGenerator(stream)) {
+            serializeJson(object, generator);
+        }
+        return stream.toString(StandardCharsets.UTF_8);
     }
 
-    private static String read(Request request) {
-        try(InputStream stream = Content.Source.asInputStream(request)) {
-            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+    /**
+     * Serializes the elements one by one into a single generator, so the stream is never materialized as a whole.
+     */
+    static void serializeJsonArray(Stream<?> objects, OutputStream stream) {
+        try(JsonGenerator generator = generators.createGenerator(stream)) {
+            generator.writeStartArray();
+            objects.forEach(object -> serializeJson(object, generator));
+            generator.writeEnd();
         }
     }
 
-    private static String serializeXml(Object object) {
-        var buffer = new StringWriter();
-        JAXB.marshal(object, buffer);
-        return buffer.toString();
+    /**
+     * Serializes the elements as newline-delimited JSON. Every element gets its own generator, whose
+     * <code>close()</code> must not close the response stream.
+     */
+    private static void serializeJsonLines(Stream<?> objects, OutputStream stream) {
+        OutputStream unclosable = new FilterOutputStream(stream) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() { }
+        };
+        objects.forEach(object -> {
+            try(JsonGenerator generator = generators.createGenerator(unclosable)) {
+                serializeJson(object, generator);
+            }
+            try {
+                stream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
-    private static <T> T deserializeXml(Class<T> clazz, String text) {
-        return JAXB.unmarshal(new StringReader(text), clazz);
+    static <T> T deserializeJson(Class<T> clazz, byte[] bytes) {
+        try {
+            return json.fromJson(new ByteArrayInputStream(bytes), clazz);
+        } catch (JsonbException | JsonException e) {
+            throw new HttpException.RuntimeException(HttpStatus.BAD_REQUEST_400, "Invalid JSON: " + e.getMessage());
+        }
     }
 
-    private static String serializeJson(Object object) {
-        return json.toJson(object);
+    private static <T> T deserializeJsonLine(Class<T> clazz, String line, long lineNumber) {
+        T object;
+        try {
+            object = json.fromJson(line, clazz);
+        } catch (JsonbException | JsonException e) {
+            throw new HttpException.RuntimeException(HttpStatus.BAD_REQUEST_400, "Invalid JSON in line " + lineNumber + ": " + e.getMessage());
+        }
+        if (object == null) {
+            throw new HttpException.RuntimeException(HttpStatus.BAD_REQUEST_400, "No object in line " + lineNumber);
+        }
+        return object;
     }
 
-    private static <T> T deserializeJson(Class<T> clazz, String text) {
-        return json.fromJson(text, clazz);
+    record Route(String method, String path, MyHandler handler, boolean streamingBody) { }
+
+    /**
+     * A route with its request metrics. The counter of every status code is registered when it first occurs, so
+     * recording a request does not allocate.
+     */
+    private final class MeteredRoute {
+
+        private final Route route;
+        private final String name;
+        private final Metrics.Histogram durations;
+        private final AtomicReferenceArray<Metrics.Counter> requests = new AtomicReferenceArray<>(600);
+
+        MeteredRoute(Route route) {
+            this.route = route;
+            this.name = route.method() + " " + route.path();
+            this.durations = metrics.histogram("app_http_request_duration_seconds", "Duration of HTTP requests by route.", "route", name);
+        }
+
+        Route route() {
+            return route;
+        }
+
+        void record(int status, long startNanos) {
+            durations.record(System.nanoTime() - startNanos);
+            int index = status >= 0 && status < requests.length() ? status : 0;
+            Metrics.Counter counter = requests.get(index);
+            if (counter == null) {
+                counter = metrics.counter("app_http_requests_total", "Number of HTTP requests by route and status.", "route", name, "status", Integer.toString(status));
+                requests.set(index, counter);
+            }
+            counter.increment();
+        }
     }
 
+    /**
+     * Handles a request and completes the callback once the response is written, possibly after it has returned.
+     */
     interface MyHandler {
-        void handle(Request request, Response response, Callback callback, Map<String, String> params);
+        void handle(Request request, Response response, Map<String, String> params, byte[] body, Callback callback) throws Exception;
+    }
+
+    private interface BodyWriter {
+        void write(OutputStream stream) throws Exception;
     }
 }
@@ -1,31 +1,62 @@
 package com.github.phoswald.sample;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import javax.sql.DataSource;
+
+import com.github.phoswald.sample.health.HealthResource;
 import com.github.phoswald.sample.sample.SampleController;
 import com.github.phoswald.sample.sample.SampleResource;
+import com.github.phoswald.sample.task.TaskCache;
 import com.github.phoswald.sample.task.TaskController;
+import com.github.phoswald.sample.task.TaskEvents;
 import com.github.phoswald.sample.task.TaskRepository;
 import com.github.phoswald.sample.task.TaskResource;
+import com.github.phoswald.sample.task.TaskWriteBuffer;
 import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.Metrics;
+import com.github.phoswald.sample.utils.PoolMetrics;
+import com.github.phoswald.sample.utils.RateLimiter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceException;
 
 public class ApplicationModule {
 
+    private static final Logger logger = LoggerFactory.getLogger(ApplicationModule.class);
+
     static {
         // Hibernate: auto-detection falls back to JUL, slf4j is only used if logback is
         // present
         System.setProperty("org.jboss.logging.provider", "slf4j");
     }
 
-    private EntityManagerFactory emf = null;
+    private CompletableFuture<EntityManagerFactory> emf = null;
+    private HikariDataSource dataSource = null;
+    private Metrics metrics = null;
+    private PoolMetrics poolMetrics = null;
+    private Semaphore repositoryPermits = null;
+    private TaskCache taskCache = null;
+    private TaskEvents taskEvents = null;
+    private TaskWriteBuffer taskWriteBuffer = null;
+    private RateLimiter rateLimiter = null;
+    private HealthResource healthResource = null;
 
     public Application getApplication() {
         return new Application(getConfigProvider(), //
-                getSampleResource(), getSampleController(), getTaskResource(), getTaskController());
+                getSampleResource(), getSampleController(), getTaskResource(), getTaskController(), getPoolMetrics(), //
+                getMetrics(), getHealthResource(), getRateLimiter(), bootstrapEntityManagerFactory());
     }
 
     public ConfigProvider getConfigProvider() {
@@ -41,27 +72,216 @@ public class ApplicationModule {
     }
 
     public TaskResource getTaskResource() {
-        return new TaskResource(getTaskRepositoryFactory());
+        return new TaskResource(getTaskRepositoryFactory(), getTaskCache(), getTaskEvents(), getTaskWriteBuffer());
     }
 
     public TaskController getTaskController() {
-        return new TaskController(getTaskRepositoryFactory());
+        return new TaskController(getTaskRepositoryFactory(), getTaskCache(), getTaskEvents());
     }
 
     public Supplier<TaskRepository> getTaskRepositoryFactory() {
-        return () -> new TaskRepository(getEntityManagerFactory());
+        var sessionDurations = getMetrics().histogram("app_jpa_session_duration_seconds",
+                "Duration of repository sessions (one transaction each), including the wait for a permit.");
+        long permitTimeout = getConnectionTimeout();
+        return () -> new TaskRepository(getEntityManagerFactory(), getRepositoryPermits(), permitTimeout, sessionDurations);
+    }
+
+    public synchronized HealthResource getHealthResource() {
+        if (healthResource == null) {
+            healthResource = new HealthResource(getDataSource(), 1);
+        }
+        return healthResource;
+    }
+
+    public synchronized TaskCache getTaskCache() {
+        if (taskCache == null) {
+            var config = getConfigProvider();
+            taskCache = new TaskCache( //
+                    Integer.parseInt(config.getConfigProperty("app.cache.tasks.max-size").orElse("10000")), //
+                    Integer.parseInt(config.getConfigProperty("app.cache.tasks.max-size-per-user").orElse("1000")), //
+                    Duration.ofSeconds(Long.parseLong(config.getConfigProperty("app.cache.tasks.ttl").orElse("60"))));
+        }
+        return taskCache;
+    }
+
+    public synchronized TaskEvents getTaskEvents() {
+        if (taskEvents == null) {
+            taskEvents = new TaskEvents(Integer.parseInt(getConfigProvider().getConfigProperty("app.events.buffer-size").orElse("1000")),
+                    Application::serializeJsonToString);
+        }
+        return taskEvents;
+    }
+
+    /**
+     * Returns the buffer that commits the task writes of concurrent requests in groups, or <code>null</code> if every
+     * request commits on its own.
+     */
+    public synchronized TaskWriteBuffer getTaskWriteBuffer() {
+        var config = getConfigProvider();
+        long maxDelay = Long.parseLong(config.getConfigProperty("app.jdbc.group-commit.max-delay").orElse("0"));
+        if (taskWriteBuffer == null && maxDelay > 0) {
+            var metrics = getMetrics();
+            taskWriteBuffer = new TaskWriteBuffer(getTaskRepositoryFactory(), //
+                    Integer.parseInt(config.getConfigProperty("app.jdbc.group-commit.max-size").orElse("100")), //
+                    Duration.ofMillis(maxDelay), //
+                    metrics.histogram("app_task_write_duration_seconds", "Duration of grouped task writes, from queuing to commit."));
+            var buffer = taskWriteBuffer;
+            metrics.counter("app_task_write_groups_total", "Number of committed groups of task writes.", buffer::groups);
+            metrics.counter("app_task_writes_total", "Number of committed grouped task writes.", buffer::writes);
+        }
+        return taskWriteBuffer;
     }
 
+    /**
+     * Returns the rate limiter of task requests per user, or <code>null</code> if requests are not limited.
+     */
+    public synchronized RateLimiter getRateLimiter() {
+        var config = getConfigProvider();
+        String perSecond = config.getConfigProperty("app.rate-limit.tasks.per-second").orElse("0");
+        if (rateLimiter == null && Double.parseDouble(perSecond) > 0) {
+            rateLimiter = new RateLimiter(Double.parseDouble(perSecond), //
+                    Double.parseDouble(config.getConfigProperty("app.rate-limit.tasks.burst").orElse(perSecond)), //
+                    Integer.parseInt(config.getConfigProperty("app.rate-limit.tasks.max-users").orElse("100000")));
+        }
+        return rateLimiter;
+    }
+
+    public synchronized Semaphore getRepositoryPermits() {
+        if (repositoryPermits == null) {
+            var config = getConfigProvider();
+            repositoryPermits = new Semaphore(Integer.parseInt(config.getConfigProperty("app.jdbc.max-concurrency")
+                    .orElse(Integer.toString(getPoolSize()))), true);
+        }
+        return repositoryPermits;
+    }
+
+    /**
+     * Returns the entity manager factory, waiting for its bootstrap to complete.
+     */
     public EntityManagerFactory getEntityManagerFactory() {
+        try {
+            return bootstrapEntityManagerFactory().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Starts creating the entity manager factory in the background, unless already started. Hibernate takes most of
+     * the startup time, so this runs in parallel with the rest of the startup.
+     */
+    public synchronized CompletableFuture<EntityManagerFactory> bootstrapEntityManagerFactory() {
         if (emf == null) {
+            emf = CompletableFuture.supplyAsync(this::createEntityManagerFactory,
+                    task -> Thread.ofPlatform().name("persistence-bootstrap").daemon().start(task));
+        }
+        return emf;
+    }
+
+    private EntityManagerFactory createEntityManagerFactory() {
+        long startNanos = System.nanoTime();
+        String schema = getConfigProvider().getConfigProperty("app.jdbc.schema").orElse("update");
+        var props = new HashMap<>();
+        props.put("jakarta.persistence.nonJtaDataSource", getDataSource());
+        // the pool hands out connections with auto-commit disabled, so Hibernate need not check and reset it
+        props.put("hibernate.connection.provider_disables_autocommit", "true");
+        props.put("hibernate.hbm2ddl.auto", schema);
+        EntityManagerFactory result = Persistence.createEntityManagerFactory("taskDS", props);
+        if (schema.equals("update") || schema.startsWith("create")) {
+            migrate(result, "task-versions", repository -> {
+                long versioned = repository.fillVersions();
+                if (versioned > 0) {
+                    logger.info("Set the version of " + versioned + " existing tasks");
+                }
+            });
+            migrate(result, "task-words", repository -> {
+                long indexed = repository.fillSearchIndex();
+                if (indexed > 0) {
+                    logger.info("Indexed the words of " + indexed + " existing tasks");
+                }
+            });
+        }
+        logger.info("Persistence bootstrap took " + (System.nanoTime() - startNanos) / 1000000 + " ms, schema=" + schema);
+        return result;
+    }
+
+    public synchronized DataSource getDataSource() {
+        if (dataSource == null) {
             var config = getConfigProvider();
-            var props = new HashMap<>();
-            props.put("jakarta.persistence.jdbc.url", config.getConfigProperty("app.jdbc.url")
+            var poolConfig = new HikariConfig();
+            poolConfig.setPoolName("taskDS");
+            poolConfig.setJdbcUrl(config.getConfigProperty("app.jdbc.url")
                     .orElse("jdbc:h2:mem:test" + hashCode() + ";DB_CLOSE_DELAY=-1"));
-            props.put("jakarta.persistence.jdbc.user", config.getConfigProperty("app.jdbc.username").orElse("sa"));
-            props.put("jakarta.persistence.jdbc.password", config.getConfigProperty("app.jdbc.password").orElse("sa"));
-            emf = Persistence.createEntityManagerFactory("taskDS", props);
+            poolConfig.setUsername(config.getConfigProperty("app.jdbc.username").orElse("sa"));
+            poolConfig.setPassword(config.getConfigProperty("app.jdbc.password").orElse("sa"));
+            poolConfig.setAutoCommit(false);
+            poolConfig.setMaximumPoolSize(getPoolSize());
+            config.getConfigProperty("app.jdbc.pool.min-idle").map(Integer::valueOf).ifPresent(poolConfig::setMinimumIdle);
+            poolConfig.setConnectionTimeout(getConnectionTimeout());
+            poolConfig.setIdleTimeout(Long.parseLong(config.getConfigProperty("app.jdbc.pool.idle-timeout").orElse("600000")));
+            poolConfig.setMaxLifetime(Long.parseLong(config.getConfigProperty("app.jdbc.pool.max-lifetime").orElse("1800000")));
+            poolConfig.setMetricsTrackerFactory(getPoolMetrics());
+            dataSource = new HikariDataSource(poolConfig);
         }
-        return emf;
+        return dataSource;
+    }
+
+    public synchronized PoolMetrics getPoolMetrics() {
+        if (poolMetrics == null) {
+            poolMetrics = new PoolMetrics(getMetrics());
+        }
+        return poolMetrics;
+    }
+
+    public synchronized Metrics getMetrics() {
+        if (metrics == null) {
+            metrics = new Metrics();
+        }
+        return metrics;
+    }
+
+    /**
+     * Runs the data migration in a transaction of its own, unless it has been applied before. If another instance
+     * applies it at the same time, the commit of one of them fails, which is fine once the migration is recorded.
+     */
+    private static void migrate(EntityManagerFactory emf, String name, Consumer<TaskRepository> migration) {
+        try {
+            try(TaskRepository repository = new TaskRepository(emf)) {
+                if (repository.beginMigration(name)) {
+                    migration.accept(repository);
+                }
+            }
+        } catch (PersistenceException e) {
+            try(TaskRepository repository = new TaskRepository(emf)) {
+                if (!repository.isMigrationApplied(name)) {
+                    throw e;
+                }
+            }
+            logger.info("Migration " + name + " was applied concurrently");
+        }
+    }
+
+    /**
+     * Commits the buffered task writes, and closes the entity manager factory and the connection pool, after the
+     * application has stopped.
+     */
+    public void close() {
+        if (taskWriteBuffer != null) {
+            taskWriteBuffer.close();
+        }
+        if (emf != null && !emf.isCompletedExceptionally()) {
+            emf.join().close();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private int getPoolSize() {
+        return Integer.parseInt(getConfigProvider().getConfigProperty("app.jdbc.pool.max").orElse("20"));
+    }
+
+    private long getConnectionTimeout() {
+        return Long.parseLong(getConfigProvider().getConfigProperty("app.jdbc.pool.connection-timeout").orElse("30000"));
     }
 }
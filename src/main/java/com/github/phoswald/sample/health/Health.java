@@ -0,0 +1,6 @@
+package com.github.phoswald.sample.health;
+
+/**
+ * Result of a health check: <code>UP</code> or <code>DOWN</code> overall and for the database.
+ */
+public record Health(String status, String database) { }
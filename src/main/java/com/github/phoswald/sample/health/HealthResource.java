@@ -0,0 +1,77 @@
+package com.github.phoswald.sample.health;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.github.phoswald.sample.utils.HttpResult;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Liveness and readiness of the application.
+ * <p>
+ * The application is live as long as its connection pool is running. It is ready if it has been marked ready (it is
+ * not when starting or shutting down), and a connection from the pool can reach the database, so a load balancer
+ * stops sending requests before the shutdown begins or while the database is unavailable. While all connections are
+ * in use, the database is not checked, because waiting for a connection could take longer than the probe, and the
+ * application remains ready: a busy pool is no reason to take it out of the load balancer.
+ */
+public class HealthResource {
+
+    private final DataSource dataSource;
+    private final int validationTimeoutSeconds;
+    private volatile boolean ready;
+
+    public HealthResource(DataSource dataSource, int validationTimeoutSeconds) {
+        this.dataSource = dataSource;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    public HttpResult getLive() {
+        boolean database = isPoolRunning();
+        return result(database, database);
+    }
+
+    public HttpResult getReady() {
+        boolean database = isPoolRunning() && (isPoolSaturated() || isDatabaseReachable());
+        return result(ready && database, database);
+    }
+
+    private boolean isPoolRunning() {
+        return !(dataSource instanceof HikariDataSource pool) || pool.isRunning();
+    }
+
+    /**
+     * Returns whether a connection can only be taken from the pool after another thread has returned one.
+     */
+    private boolean isPoolSaturated() {
+        if (!(dataSource instanceof HikariDataSource pool) || pool.getHikariPoolMXBean() == null) {
+            return false;
+        }
+        HikariPoolMXBean stats = pool.getHikariPoolMXBean();
+        return stats.getIdleConnections() == 0
+                && (stats.getThreadsAwaitingConnection() > 0 || stats.getActiveConnections() >= pool.getMaximumPoolSize());
+    }
+
+    private boolean isDatabaseReachable() {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static HttpResult result(boolean up, boolean database) {
+        return HttpResult.status(up ? 200 : 503, new Health(status(up), status(database)));
+    }
+
+    private static String status(boolean up) {
+        return up ? "UP" : "DOWN";
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.phoswald.sample.sample;
+
+import java.lang.reflect.Type;
+
+import jakarta.json.bind.serializer.DeserializationContext;
+import jakarta.json.bind.serializer.JsonbDeserializer;
+import jakarta.json.bind.serializer.JsonbSerializer;
+import jakarta.json.bind.serializer.SerializationContext;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * JSON binding of the echo request and response without reflection, in the format Yasson derives from the
+ * properties.
+ */
+public final class EchoJson {
+
+    private EchoJson() { }
+
+    public static final class RequestDeserializer implements JsonbDeserializer<EchoRequest> {
+
+        @Override
+        public EchoRequest deserialize(JsonParser parser, DeserializationContext context, Type type) {
+            EchoRequest request = new EchoRequest();
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String name = parser.getString();
+                JsonParser.Event event = parser.next();
+                if (name.equals("input") && event != JsonParser.Event.VALUE_NULL) {
+                    request.setInput(parser.getString());
+                } else if (event == JsonParser.Event.START_OBJECT) {
+                    parser.skipObject();
+                } else if (event == JsonParser.Event.START_ARRAY) {
+                    parser.skipArray();
+                }
+            }
+            return request;
+        }
+    }
+
+    public static final class ResponseSerializer implements JsonbSerializer<EchoResponse> {
+
+        @Override
+        public void serialize(EchoResponse response, JsonGenerator generator, SerializationContext context) {
+            generator.writeStartObject();
+            if (response.getOutput() != null) {
+                generator.write("output", response.getOutput());
+            }
+            generator.writeEnd();
+        }
+    }
+}
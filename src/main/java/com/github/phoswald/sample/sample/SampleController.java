@@ -1,6 +1,7 @@
 package com.github.phoswald.sample.sample;
 
 import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.HtmlPage;
 
 public class SampleController {
 
@@ -10,7 +11,7 @@ public class SampleController {
         this.sampleConfig = config.getConfigProperty("app.sample.config").orElse("Undefined");
     }
 
-    public String getSamplePage() {
+    public HtmlPage getSamplePage() {
         return new SampleView().render(new SampleViewModel(sampleConfig));
     }
 }
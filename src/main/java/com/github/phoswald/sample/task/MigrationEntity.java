@@ -0,0 +1,39 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Data migration that has been applied to the database, so that it runs once rather than at every startup. The row is
+ * written in the transaction of the migration, see {@link TaskRepository#beginMigration(String)}.
+ */
+@Entity
+@Table(name = "migration_")
+public class MigrationEntity {
+
+    @Id
+    @Column(name = "name_")
+    private String name;
+
+    @Column(name = "applied_")
+    private Instant applied;
+
+    protected MigrationEntity() { }
+
+    MigrationEntity(String name, Instant applied) {
+        this.name = name;
+        this.applied = applied;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Instant getApplied() {
+        return applied;
+    }
+}
@@ -0,0 +1,6 @@
+package com.github.phoswald.sample.task;
+
+/**
+ * Outcome of one item of a batch request, with the status code the item would have had as a single request.
+ */
+public record TaskBatchResult(String taskId, int status) { }
@@ -0,0 +1,196 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded read-through cache of tasks by ID, with least-recently-used eviction and a time to live.
+ * <p>
+ * Every user also has a quota of entries, beyond which their own least recently used task is evicted, so the tasks of
+ * a large tenant cannot push those of all others out of the cache. A cached task is only returned to its own user.
+ * <p>
+ * Cached tasks are detached and shared between requests, so they must not be modified. Writers call
+ * {@link #invalidate(String)} after their transaction has committed. A load that overlaps an invalidation is not
+ * cached, so a reader that fetched the old state cannot put it back after the writer has removed it.
+ * <p>
+ * The versions of the users' task lists are cached the same way, up to the same number of users, and writers that
+ * create, change or delete tasks call {@link #invalidateVersion(String)}.
+ */
+public class TaskCache {
+
+    private final int maxSize;
+    private final int maxSizePerUser;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    // the same entries by user, each in access order like the entries
+    private final Map<String, Map<String, Entry>> users = new HashMap<>();
+    private final Map<String, VersionEntry> versions;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TaskCache(int maxSize, int maxSizePerUser, Duration ttl) {
+        this(maxSize, maxSizePerUser, ttl, System::nanoTime);
+    }
+
+    TaskCache(int maxSize, int maxSizePerUser, Duration ttl, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.maxSizePerUser = maxSizePerUser;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > TaskCache.this.maxSize) {
+                    evictions.increment();
+                    removeFromUser(eldest.getValue().userId(), eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.versions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VersionEntry> eldest) {
+                return size() > TaskCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached task of the user, or loads it using the given function, which must return only tasks of the
+     * user. Missing tasks (<code>null</code>) are not cached. The cached task of another user is not returned, and
+     * <code>null</code> is returned instead.
+     */
+    public TaskEntity get(String userId, String taskId, Function<String, TaskEntity> loader) {
+        if (maxSize <= 0) {
+            return loader.apply(taskId);
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(taskId);
+            if (entry != null && now - entry.loaded() < ttlNanos) {
+                if (!entry.userId().equals(userId)) {
+                    return null;
+                }
+                users.get(userId).get(taskId);
+                hits.increment();
+                return entry.task();
+            }
+        }
+        misses.increment();
+        long loadGeneration = generation.get();
+        TaskEntity task = loader.apply(taskId);
+        synchronized (entries) {
+            if (task == null || generation.get() != loadGeneration) {
+                remove(taskId);
+            } else {
+                put(taskId, new Entry(task, userId, now));
+            }
+        }
+        return task;
+    }
+
+    public void invalidate(String taskId) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            remove(taskId);
+        }
+    }
+
+    /**
+     * Returns the cached version of the user's task list, or loads it using the given function.
+     */
+    public TaskListVersion getVersion(String userId, Function<String, TaskListVersion> loader) {
+        if (maxSize <= 0) {
+            return loader.apply(userId);
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            VersionEntry entry = versions.get(userId);
+            if (entry != null && now - entry.loaded() < ttlNanos) {
+                return entry.version();
+            }
+        }
+        long loadGeneration = generation.get();
+        TaskListVersion version = loader.apply(userId);
+        synchronized (entries) {
+            if (generation.get() != loadGeneration) {
+                versions.remove(userId);
+            } else {
+                versions.put(userId, new VersionEntry(version, now));
+            }
+        }
+        return version;
+    }
+
+    public void invalidateVersion(String userId) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            versions.remove(userId);
+        }
+    }
+
+    private void put(String taskId, Entry entry) {
+        // the quota of the user applies first, so a full cache does not also evict the task of another user
+        Map<String, Entry> userEntries = users.computeIfAbsent(entry.userId(), key -> new LinkedHashMap<>(16, 0.75f, true));
+        userEntries.put(taskId, entry);
+        if (userEntries.size() > maxSizePerUser) {
+            String eldest = userEntries.keySet().iterator().next();
+            userEntries.remove(eldest);
+            entries.remove(eldest);
+            evictions.increment();
+        }
+        Entry previous = entries.put(taskId, entry);
+        if (previous != null && !previous.userId().equals(entry.userId())) {
+            removeFromUser(previous.userId(), taskId);
+        }
+    }
+
+    private void remove(String taskId) {
+        Entry entry = entries.remove(taskId);
+        if (entry != null) {
+            removeFromUser(entry.userId(), taskId);
+        }
+    }
+
+    private void removeFromUser(String userId, String taskId) {
+        Map<String, Entry> userEntries = users.get(userId);
+        if (userEntries != null) {
+            userEntries.remove(taskId);
+            if (userEntries.isEmpty()) {
+                users.remove(userId);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private record Entry(TaskEntity task, String userId, long loaded) { }
+
+    private record VersionEntry(TaskListVersion version, long loaded) { }
+}
@@ -6,79 +6,146 @@ import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
 
+import jakarta.persistence.OptimisticLockException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.phoswald.sample.utils.ETags;
+import com.github.phoswald.sample.utils.HttpResult;
+
 public class TaskController {
 
     private static final Logger logger = LoggerFactory.getLogger(TaskController.class);
 
+    private static final int PAGE_SIZE = 100;
+    private static final String CONFLICT_MESSAGE = "The task has been changed in the meantime, reload it and try again.";
+
     private final Supplier<TaskRepository> repositoryFactory;
+    private final TaskCache taskCache;
+    private final TaskEvents taskEvents;
+    // pages also change with the templates, so their entity tags are specific to the running process
+    private final String pageVersion = Long.toString(System.currentTimeMillis(), 36);
 
-    public TaskController(Supplier<TaskRepository> repositoryFactory) {
+    public TaskController(Supplier<TaskRepository> repositoryFactory, TaskCache taskCache, TaskEvents taskEvents) {
         this.repositoryFactory = repositoryFactory;
+        this.taskCache = taskCache;
+        this.taskEvents = taskEvents;
     }
 
-    public String getTasksPage() {
+    /**
+     * Returns a page of the user's tasks, or of those that contain all words of the search text.
+     */
+    public Object getTasksPage(String userId, String after, String search) {
+        TaskCursor cursor;
+        TaskQuery query;
+        try {
+            cursor = after == null ? null : TaskCursor.parse(after);
+            query = TaskQuery.parse(search, null, null, null);
+        } catch (IllegalArgumentException e) {
+            return HttpResult.status(400, e.getMessage());
+        }
         try(TaskRepository repository = repositoryFactory.get()) {
-            List<TaskEntity> entities = repository.selectAllTasks();
-            List<TaskViewModel> viewModel = TaskViewModel.newList(entities);
+            List<TaskEntity> entities = query.text() == null
+                    ? repository.selectTasks(userId, cursor, PAGE_SIZE)
+                    : repository.selectTasksMatching(userId, query, cursor, PAGE_SIZE);
+            TaskCursor next = entities.size() == PAGE_SIZE ? TaskCursor.of(entities.get(entities.size() - 1)) : null;
+            TaskListViewModel viewModel = new TaskListViewModel(TaskViewModel.newList(entities), next, query.text());
             return new TaskListView().render(viewModel);
         }
     }
 
-    public String postTasksPage( //
+    public Object postTasksPage( //
+            String userId, //
             String title, //
             String description) {
         logger.info("Received from with title=" + title + ", description=" + description);
+        TaskEntity entity = new TaskEntity();
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = new TaskEntity();
             entity.setNewTaskId();
-            entity.setUserId("guest");
+            entity.setUserId(userId);
             entity.setTimestamp(Instant.now());
             entity.setTitle(title);
             entity.setDescription(description);
             entity.setDone(false);
             repository.createTask(entity);
         }
-        return getTasksPage();
+        taskCache.invalidateVersion(userId);
+        taskEvents.created(entity);
+        return getTasksPage(userId, null, null);
     }
 
-    public String getTaskPage( //
+    public Object getTaskPage( //
+            String userId, //
             String id, //
-            String action) {
-        try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = repository.selectTaskById(id);
-            TaskViewModel viewModel = new TaskViewModel(entity);
-            if (Objects.equals(action, "edit")) {
-                return new TaskEditView().render(viewModel);
-            } else {
-                return new TaskView().render(viewModel);
+            String action, //
+            String ifNoneMatch) {
+        TaskEntity entity = taskCache.get(userId, id, key -> {
+            try(TaskRepository repository = repositoryFactory.get()) {
+                return repository.selectTaskById(userId, key);
             }
+        });
+        if (entity == null) {
+            return HttpResult.status(404);
+        }
+        boolean edit = Objects.equals(action, "edit");
+        String etag = TaskETags.of(entity, (edit ? "edit-" : "view-") + pageVersion);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return HttpResult.status(304).withHeader("ETag", etag);
+        }
+        TaskViewModel viewModel = new TaskViewModel(entity);
+        if (edit) {
+            return HttpResult.ok(new TaskEditView().render(viewModel)).withHeader("ETag", etag);
+        } else {
+            return HttpResult.ok(new TaskView().render(viewModel)).withHeader("ETag", etag);
         }
     }
 
+    /**
+     * Deletes or stores the task. Storing fails with 409 if the task was changed after the form was rendered, that is,
+     * if the version submitted with the form is no longer current.
+     */
     public Object postTaskPage( //
+            String userId, //
             String id, //
             String action, //
             String title, //
             String description, //
-            String done) {
-        logger.info("Received from with id=" + id + ", action=" + action + ", title=" + title + ", description=" + description + ", done=" + done);
+            String done, //
+            String version) {
+        logger.info("Received from with id=" + id + ", action=" + action + ", title=" + title + ", description=" + description + ", done=" + done + ", version=" + version);
+        TaskEntity entity;
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = repository.selectTaskById(id);
+            entity = repository.selectTaskById(userId, id);
+            if (entity == null) {
+                return HttpResult.status(404);
+            }
             if (Objects.equals(action, "delete")) {
                 repository.deleteTask(entity);
-                return Paths.get("/app/pages/tasks");
             }
             if (Objects.equals(action, "store")) {
+                if (version != null && !version.isEmpty() && !version.equals(String.valueOf(entity.getVersion()))) {
+                    return HttpResult.status(409, CONFLICT_MESSAGE);
+                }
                 entity.setTimestamp(Instant.now());
                 entity.setTitle(title);
                 entity.setDescription(description);
                 entity.setDone(Objects.equals(done, "on"));
                 repository.updateChanges();
             }
+        } catch (OptimisticLockException e) {
+            taskCache.invalidate(id);
+            return HttpResult.status(409, CONFLICT_MESSAGE);
+        }
+        taskCache.invalidate(id);
+        taskCache.invalidateVersion(userId);
+        if (Objects.equals(action, "delete")) {
+            taskEvents.deleted(userId, id);
+            return Paths.get("/app/pages/tasks");
+        }
+        if (Objects.equals(action, "store")) {
+            taskEvents.updated(entity);
         }
-        return getTaskPage(id, null);
+        return getTaskPage(userId, id, null, null);
     }
 }
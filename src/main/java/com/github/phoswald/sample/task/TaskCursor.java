@@ -0,0 +1,34 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Position in the task list, which is ordered by descending timestamp and task ID.
+ * <p>
+ * The string form is <code>&lt;timestamp&gt;_&lt;taskId&gt;</code>, so clients can build the cursor for the next page
+ * from the last task they received.
+ */
+public record TaskCursor(Instant timestamp, String taskId) {
+
+    public static TaskCursor of(TaskEntity entity) {
+        return new TaskCursor(entity.getTimestamp(), entity.getTaskId());
+    }
+
+    public static TaskCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf('_');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new TaskCursor(Instant.parse(cursor.substring(0, separator)), cursor.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + "_" + taskId;
+    }
+}
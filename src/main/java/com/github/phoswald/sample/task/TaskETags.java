@@ -0,0 +1,52 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Entity tags of tasks and of the task list, derived from timestamps (which have microsecond precision).
+ */
+final class TaskETags {
+
+    private TaskETags() { }
+
+    static String of(TaskEntity entity) {
+        return of(entity.getTimestamp());
+    }
+
+    static String of(Instant timestamp) {
+        return quote(micros(timestamp));
+    }
+
+    static String of(TaskEntity entity, String variant) {
+        return quote(micros(entity.getTimestamp()) + "-" + variant);
+    }
+
+    static String of(TaskListVersion version) {
+        return quote(version.count() + "-" + (version.latest() == null ? "0" : micros(version.latest())));
+    }
+
+    /**
+     * Returns the timestamp of the task with the given entity tag, or <code>null</code> if it is not a single strong
+     * entity tag of a task.
+     */
+    static Instant timestampOf(String etag) {
+        String tag = etag.trim();
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            return Instant.EPOCH.plus(Long.parseLong(tag.substring(1, tag.length() - 1), 36), ChronoUnit.MICROS);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String micros(Instant timestamp) {
+        return Long.toString(ChronoUnit.MICROS.between(Instant.EPOCH, timestamp), 36);
+    }
+
+    private static String quote(String tag) {
+        return "\"" + tag + "\"";
+    }
+}
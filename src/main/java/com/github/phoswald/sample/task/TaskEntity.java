@@ -1,22 +1,44 @@
 package com.github.phoswald.sample.task;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.NamedQueries;
 import jakarta.persistence.NamedQuery;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "task_")
+@Table(name = "task_", indexes = { //
+        @Index(name = "task_user_ix_", columnList = "user_id_, timestamp_ desc, task_id_ desc") })
 @NamedQueries({ //
-        @NamedQuery(name = TaskEntity.SELECT_ALL, query = "select t from TaskEntity t order by t.timestamp desc") })
+        @NamedQuery(name = TaskEntity.SELECT_ALL, query = "select t from TaskEntity t where t.userId = :userId " //
+                + "order by t.timestamp desc, t.taskId desc"), //
+        @NamedQuery(name = TaskEntity.SELECT_AFTER, query = "select t from TaskEntity t " //
+                + "where t.userId = :userId and t.timestamp <= :timestamp and (t.timestamp < :timestamp or t.taskId < :taskId) " //
+                + "order by t.timestamp desc, t.taskId desc"), //
+        @NamedQuery(name = TaskEntity.SELECT_ALL_BY_ID, query = "select t from TaskEntity t order by t.taskId"), //
+        @NamedQuery(name = TaskEntity.SELECT_BY_IDS, query = "select t from TaskEntity t where t.userId = :userId and t.taskId in :taskIds"), //
+        @NamedQuery(name = TaskEntity.SELECT_IDS, query = "select t.taskId from TaskEntity t where t.userId = :userId and t.taskId in :taskIds"), //
+        @NamedQuery(name = TaskEntity.SELECT_TAKEN_IDS, query = "select t.taskId from TaskEntity t where t.taskId in :taskIds"), //
+        @NamedQuery(name = TaskEntity.DELETE_BY_IDS, query = "delete from TaskEntity t where t.taskId in :taskIds"), //
+        @NamedQuery(name = TaskEntity.SELECT_VERSION, query = "select new com.github.phoswald.sample.task.TaskListVersion(count(t), max(t.timestamp)) " //
+                + "from TaskEntity t where t.userId = :userId") })
 public class TaskEntity {
 
     static final String SELECT_ALL = "TaskEntity.Select";
+    static final String SELECT_AFTER = "TaskEntity.SelectAfter";
+    static final String SELECT_VERSION = "TaskEntity.SelectVersion";
+    static final String SELECT_ALL_BY_ID = "TaskEntity.SelectAllById";
+    static final String SELECT_BY_IDS = "TaskEntity.SelectByIds";
+    static final String SELECT_IDS = "TaskEntity.SelectIds";
+    static final String SELECT_TAKEN_IDS = "TaskEntity.SelectTakenIds";
+    static final String DELETE_BY_IDS = "TaskEntity.DeleteByIds";
 
     @Id
     @Column(name = "task_id_")
@@ -37,10 +59,19 @@ public class TaskEntity {
     @Column(name = "done_")
     private Boolean done;
 
+    // incremented with every update, so updates based on a stale read fail instead of overwriting other changes
+    @Version
+    @Column(name = "version_")
+    private Long version;
+
     public String getTaskId() {
         return taskId;
     }
 
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
     public void setNewTaskId() {
         this.taskId = UUID.randomUUID().toString().replace("-", "");
     }
@@ -57,8 +88,12 @@ public class TaskEntity {
         return timestamp;
     }
 
+    /**
+     * Sets the timestamp, truncated to the microseconds stored by the database, so the entity does not change when it
+     * is read back (the entity tags depend on it).
+     */
     public void setTimestamp(Instant timestamp) {
-        this.timestamp = timestamp;
+        this.timestamp = timestamp == null ? null : timestamp.truncatedTo(ChronoUnit.MICROS);
     }
 
     public String getTitle() {
@@ -84,4 +119,19 @@ public class TaskEntity {
     public void setDone(boolean done) {
         this.done = Boolean.valueOf(done);
     }
+
+    /**
+     * Returns whether the done flag is set at all, which distinguishes a partial update without it.
+     */
+    boolean hasDone() {
+        return done != null;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,102 @@
+package com.github.phoswald.sample.task;
+
+import java.lang.reflect.Type;
+import java.time.DateTimeException;
+import java.time.Instant;
+
+import jakarta.json.JsonValue;
+import jakarta.json.bind.JsonbException;
+import jakarta.json.bind.serializer.DeserializationContext;
+import jakarta.json.bind.serializer.JsonbDeserializer;
+import jakarta.json.bind.serializer.JsonbSerializer;
+import jakarta.json.bind.serializer.SerializationContext;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * JSON binding of {@link TaskEntity} without reflection. The format is the one Yasson derives from the properties:
+ * properties in lexicographical order, <code>null</code> values omitted, unknown properties ignored.
+ */
+public final class TaskEntityJson {
+
+    private TaskEntityJson() { }
+
+    public static final class Serializer implements JsonbSerializer<TaskEntity> {
+
+        @Override
+        public void serialize(TaskEntity task, JsonGenerator generator, SerializationContext context) {
+            generator.writeStartObject();
+            writeIfPresent(generator, "description", task.getDescription());
+            generator.write("done", task.isDone());
+            writeIfPresent(generator, "taskId", task.getTaskId());
+            if (task.getTimestamp() != null) {
+                generator.write("timestamp", task.getTimestamp().toString());
+            }
+            writeIfPresent(generator, "title", task.getTitle());
+            writeIfPresent(generator, "userId", task.getUserId());
+            if (task.getVersion() != null) {
+                generator.write("version", task.getVersion().longValue());
+            }
+            generator.writeEnd();
+        }
+
+        private static void writeIfPresent(JsonGenerator generator, String name, String value) {
+            if (value != null) {
+                generator.write(name, value);
+            }
+        }
+    }
+
+    public static final class Deserializer implements JsonbDeserializer<TaskEntity> {
+
+        @Override
+        public TaskEntity deserialize(JsonParser parser, DeserializationContext context, Type type) {
+            // Yasson also passes null values, such as null elements of arrays; the parser it passes is limited to the
+            // current value, so it has no next event if that is not an object
+            if (!parser.hasNext()) {
+                if (parser.getValue().getValueType() == JsonValue.ValueType.NULL) {
+                    return null;
+                }
+                throw new JsonbException("Expected a task object, found " + parser.getValue());
+            }
+            return readTask(parser);
+        }
+    }
+
+    /**
+     * Reads the properties of a task, after the start of its object.
+     */
+    private static TaskEntity readTask(JsonParser parser) {
+        TaskEntity task = new TaskEntity();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String name = parser.getString();
+            JsonParser.Event event = parser.next();
+            if (event == JsonParser.Event.VALUE_NULL) {
+                continue;
+            }
+            try {
+                switch (name) {
+                    case "taskId" -> task.setTaskId(parser.getString());
+                    case "userId" -> task.setUserId(parser.getString());
+                    case "timestamp" -> task.setTimestamp(Instant.parse(parser.getString()));
+                    case "title" -> task.setTitle(parser.getString());
+                    case "description" -> task.setDescription(parser.getString());
+                    case "done" -> task.setDone(event == JsonParser.Event.VALUE_TRUE);
+                    case "version" -> task.setVersion(parser.getLong());
+                    default -> skip(parser, event);
+                }
+            } catch (IllegalStateException | DateTimeException e) {
+                throw new JsonbException("Invalid value of " + name + ": " + e.getMessage(), e);
+            }
+        }
+        return task;
+    }
+
+    private static void skip(JsonParser parser, JsonParser.Event event) {
+        if (event == JsonParser.Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == JsonParser.Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.github.phoswald.sample.task;
+
+/**
+ * Change of a task of a user, numbered in the order of {@link TaskEvents}. The data is the serialized task after the
+ * change (<code>created</code>, <code>updated</code>) or just its ID (<code>deleted</code>). A <code>reset</code> event
+ * has no data and tells a subscriber that events were lost, so it must reload the tasks.
+ */
+public record TaskEvent(long id, String userId, String type, String data) {
+
+    static final String CREATED = "created";
+    static final String UPDATED = "updated";
+    static final String DELETED = "deleted";
+    static final String RESET = "reset";
+}
@@ -0,0 +1,93 @@
+package com.github.phoswald.sample.task;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-process fan-out of task changes to the subscribers of their user, with the latest events kept in a ring buffer,
+ * so a subscriber that reconnects can resume after the last event it received.
+ * <p>
+ * Events are numbered in the order they are published, starting at the current time in microseconds, so the IDs
+ * received from an earlier process are older than all buffered ones. The data of an event is serialized once, before
+ * the bus is locked, and its subscribers are called after it is unlocked again, so a slow subscriber does not hold up
+ * other publishers. The subscribers are determined while the event is buffered, so a subscriber that resumes
+ * meanwhile gets it exactly once, either replayed or published. Events published concurrently may arrive in a
+ * different order than their IDs. Subscribers must only queue the event, not block.
+ */
+public class TaskEvents {
+
+    private final TaskEvent[] buffer;
+    private final Function<Object, String> serializer;
+    private final long firstId = System.currentTimeMillis() * 1000;
+    private final Map<String, Set<Consumer<TaskEvent>>> subscribers = new HashMap<>();
+    private long nextId = firstId;
+
+    /**
+     * Creates a bus that keeps the given number of events, and serializes their data with the given function.
+     */
+    public TaskEvents(int bufferSize, Function<Object, String> serializer) {
+        this.buffer = new TaskEvent[bufferSize];
+        this.serializer = serializer;
+    }
+
+    public void created(TaskEntity task) {
+        publish(task.getUserId(), TaskEvent.CREATED, task);
+    }
+
+    public void updated(TaskEntity task) {
+        publish(task.getUserId(), TaskEvent.UPDATED, task);
+    }
+
+    public void deleted(String userId, String taskId) {
+        publish(userId, TaskEvent.DELETED, Map.of("taskId", taskId));
+    }
+
+    private void publish(String userId, String type, Object data) {
+        String json = serializer.apply(data);
+        TaskEvent event;
+        List<Consumer<TaskEvent>> userSubscribers;
+        synchronized (this) {
+            event = new TaskEvent(nextId, userId, type, json);
+            buffer[(int) (nextId % buffer.length)] = event;
+            nextId++;
+            Set<Consumer<TaskEvent>> current = subscribers.get(userId);
+            userSubscribers = current == null ? List.of() : List.copyOf(current);
+        }
+        userSubscribers.forEach(subscriber -> subscriber.accept(event));
+    }
+
+    /**
+     * Subscribes to the events of the user, and returns the action that unsubscribes. If the ID of the last event
+     * received is given, the buffered events of the user after it are passed first, or a reset event if some events
+     * after it are no longer buffered.
+     */
+    public synchronized Runnable subscribe(String userId, Long lastEventId, Consumer<TaskEvent> subscriber) {
+        if (lastEventId != null && lastEventId != nextId - 1) {
+            long oldestId = Math.max(firstId, nextId - buffer.length);
+            if (lastEventId < oldestId - 1 || lastEventId >= nextId) {
+                subscriber.accept(new TaskEvent(nextId - 1, userId, TaskEvent.RESET, null));
+            } else {
+                for (long id = lastEventId + 1; id < nextId; id++) {
+                    TaskEvent event = buffer[(int) (id % buffer.length)];
+                    if (event.userId().equals(userId)) {
+                        subscriber.accept(event);
+                    }
+                }
+            }
+        }
+        subscribers.computeIfAbsent(userId, key -> new LinkedHashSet<>()).add(subscriber);
+        return () -> unsubscribe(userId, subscriber);
+    }
+
+    private synchronized void unsubscribe(String userId, Consumer<TaskEvent> subscriber) {
+        Set<Consumer<TaskEvent>> userSubscribers = subscribers.get(userId);
+        if (userSubscribers != null && userSubscribers.remove(subscriber) && userSubscribers.isEmpty()) {
+            subscribers.remove(userId);
+        }
+    }
+}
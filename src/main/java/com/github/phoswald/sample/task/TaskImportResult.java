@@ -0,0 +1,9 @@
+package com.github.phoswald.sample.task;
+
+import java.util.List;
+
+/**
+ * Number of tasks that were created and that replaced existing tasks with the same ID, and the tasks that were not
+ * imported because their ID belongs to a task of another user (status 409).
+ */
+public record TaskImportResult(long created, long updated, List<TaskBatchResult> rejected) { }
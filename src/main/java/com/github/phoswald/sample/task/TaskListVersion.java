@@ -0,0 +1,9 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+
+/**
+ * Number of tasks of a user and their newest timestamp. Every write sets the timestamp of the task to the current
+ * time, so creating, updating or deleting tasks always changes the version.
+ */
+public record TaskListVersion(long count, Instant latest) { }
@@ -0,0 +1,16 @@
+package com.github.phoswald.sample.task;
+
+import java.util.List;
+
+public class TaskListViewModel {
+
+    public final List<TaskViewModel> tasks;
+    public final String next;
+    public final String search;
+
+    public TaskListViewModel(List<TaskViewModel> tasks, TaskCursor next, String search) {
+        this.tasks = tasks;
+        this.next = next == null ? null : next.toString();
+        this.search = search;
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Conditions of a task search, each of which is optional: words that must all occur in the title or description,
+ * the done state, and a time range (<code>from</code> inclusive, <code>to</code> exclusive).
+ */
+public record TaskQuery(String text, Boolean done, Instant from, Instant to) {
+
+    /**
+     * Parses the query parameters, treating empty values like absent ones.
+     */
+    public static TaskQuery parse(String text, String done, String from, String to) {
+        if (isPresent(done) && !done.equals("true") && !done.equals("false")) {
+            throw new IllegalArgumentException("Invalid done: " + done);
+        }
+        try {
+            return new TaskQuery( //
+                    isPresent(text) ? text.strip() : null, //
+                    isPresent(done) ? Boolean.valueOf(done) : null, //
+                    isPresent(from) ? Instant.parse(from) : null, //
+                    isPresent(to) ? Instant.parse(to) : null);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time: " + e.getParsedString(), e);
+        }
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+}
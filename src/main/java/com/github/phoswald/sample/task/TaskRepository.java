@@ -1,19 +1,87 @@
 package com.github.phoswald.sample.task;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.http.HttpException;
+import org.eclipse.jetty.http.HttpStatus;
+
+import com.github.phoswald.sample.utils.Metrics;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.RollbackException;
 import jakarta.persistence.TypedQuery;
 
+/**
+ * Transaction over the tasks, which is committed when the repository is closed.
+ * <p>
+ * Tasks belong to a user, and all queries except {@link #streamAllTasks()} are restricted to the tasks of the given
+ * user. They are served by indexes that start with the user ID, so their cost does not depend on the number of tasks
+ * of other users.
+ * <p>
+ * The repository also maintains the search index ({@link TaskWordEntity}): it remembers the tasks it has read or
+ * created, and before changes are written it replaces the words of those whose user, title, description or timestamp
+ * have changed. So tasks must be changed through entities obtained from the same repository, which is how all writes
+ * work. Tasks without a user cannot be found by any query, so their words are not indexed.
+ * <p>
+ * Tasks are versioned: writing a task that was changed by another transaction since it was read fails with an
+ * {@link OptimisticLockException}, either when changes are written or when the repository is closed.
+ */
 public class TaskRepository implements AutoCloseable {
 
+    private static final int INDEX_CHUNK_SIZE = 1000;
+
+    private final Semaphore permits;
+    private final Metrics.Histogram durations;
+    private final long startNanos = System.nanoTime();
     private final EntityManager em;
+    // tasks read or created here, with the state their words were indexed for (null if they have none yet)
+    private final Map<TaskEntity, Indexed> indexed = new IdentityHashMap<>();
+    private final List<TaskWordEntity> writtenWords = new ArrayList<>();
     private boolean rollback;
 
     public TaskRepository(EntityManagerFactory emf) {
-        em = emf.createEntityManager();
-        em.getTransaction().begin();
+        this(emf, null, 0);
+    }
+
+    /**
+     * Creates a repository whose lifetime holds one of the given permits, which bounds the number of concurrent
+     * entity managers (and thus JDBC connections) independently of the number of request threads.
+     * If no permit becomes available within the given timeout, the request fails with 503 (Service Unavailable).
+     */
+    public TaskRepository(EntityManagerFactory emf, Semaphore permits, long permitTimeoutMillis) {
+        this(emf, permits, permitTimeoutMillis, null);
+    }
+
+    /**
+     * Creates a repository that also records its lifetime, from waiting for the permit to the end of the
+     * transaction, in the given histogram.
+     */
+    public TaskRepository(EntityManagerFactory emf, Semaphore permits, long permitTimeoutMillis, Metrics.Histogram durations) {
+        this.durations = durations;
+        if (permits != null) {
+            acquirePermit(permits, permitTimeoutMillis);
+        }
+        this.permits = permits;
+        try {
+            em = emf.createEntityManager();
+            em.getTransaction().begin();
+        } catch (RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
     }
 
     @Override
@@ -22,10 +90,49 @@ public class TaskRepository implements AutoCloseable {
             if(rollback) {
                 em.getTransaction().rollback();
             } else {
-                em.getTransaction().commit();
+                try {
+                    writeWords();
+                } catch (RuntimeException e) {
+                    em.getTransaction().rollback();
+                    throw e;
+                }
+                commit();
             }
         } finally {
             em.close();
+            releasePermit();
+            if (durations != null) {
+                durations.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    private void commit() {
+        try {
+            em.getTransaction().commit();
+        } catch (RollbackException e) {
+            if (e.getCause() instanceof OptimisticLockException conflict) {
+                throw conflict;
+            }
+            throw e;
+        }
+    }
+
+    private static void acquirePermit(Semaphore permits, long timeoutMillis) {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new HttpException.RuntimeException(HttpStatus.SERVICE_UNAVAILABLE_503,
+                        "No database session available within " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException.RuntimeException(HttpStatus.SERVICE_UNAVAILABLE_503, "Interrupted while waiting for a database session");
+        }
+    }
+
+    private void releasePermit() {
+        if (permits != null) {
+            permits.release();
         }
     }
 
@@ -33,25 +140,349 @@ public class TaskRepository implements AutoCloseable {
         rollback = true;
     }
 
-    public List<TaskEntity> selectAllTasks() {
-        TypedQuery<TaskEntity> query = em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class);
-        query.setMaxResults(100);
-        return query.getResultList();
+    public List<TaskEntity> selectAllTasks(String userId) {
+        return selectTasks(userId, null, 100);
+    }
+
+    /**
+     * Returns up to <code>limit</code> tasks of the user following the given cursor (or the newest ones if the cursor
+     * is <code>null</code>). The keyset condition is served by the index on user, timestamp and task ID, so every page
+     * costs the same regardless of how deep it is.
+     */
+    public List<TaskEntity> selectTasks(String userId, TaskCursor after, int limit) {
+        return track(createPageQuery(userId, after, limit).getResultList());
+    }
+
+    /**
+     * Returns up to <code>limit</code> tasks of the user that match the query and follow the given cursor, in the same
+     * order as {@link #selectTasks(String, TaskCursor, int)}. The newest tasks with the longest word (likely the rarest
+     * one) are read along the search index, until enough of them also have the other words and meet the other
+     * conditions. Without words, the tasks are read along the index on user, timestamp and task ID instead.
+     */
+    public List<TaskEntity> selectTasksMatching(String userId, TaskQuery query, TaskCursor after, int limit) {
+        List<String> words = new ArrayList<>(TaskWords.of(query.text()));
+        words.sort(Comparator.comparingInt(String::length).reversed());
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", userId);
+        StringBuilder jpql = new StringBuilder();
+        String order;
+        if (words.isEmpty()) {
+            jpql.append("select t from TaskEntity t where t.userId = :userId");
+            order = "t";
+        } else {
+            jpql.append("select t from TaskWordEntity w join TaskEntity t on t.taskId = w.taskId where w.userId = :userId and w.word = :word0");
+            for (int i = 1; i < words.size(); i++) {
+                jpql.append(" and exists (select 1 from TaskWordEntity w" + i + " where w" + i + ".word = :word" + i //
+                        + " and w" + i + ".taskId = w.taskId)");
+            }
+            for (int i = 0; i < words.size(); i++) {
+                params.put("word" + i, words.get(i));
+            }
+            order = "w";
+        }
+        if (query.done() != null) {
+            jpql.append(" and coalesce(t.done, false) = :done");
+            params.put("done", query.done());
+        }
+        if (query.from() != null) {
+            jpql.append(" and " + order + ".timestamp >= :from");
+            params.put("from", query.from());
+        }
+        if (query.to() != null) {
+            jpql.append(" and " + order + ".timestamp < :to");
+            params.put("to", query.to());
+        }
+        if (after != null) {
+            jpql.append(" and " + order + ".timestamp <= :timestamp and (" + order + ".timestamp < :timestamp or " + order + ".taskId < :taskId)");
+            params.put("timestamp", after.timestamp());
+            params.put("taskId", after.taskId());
+        }
+        jpql.append(" order by " + order + ".timestamp desc, " + order + ".taskId desc");
+
+        TypedQuery<TaskEntity> typedQuery = em.createQuery(jpql.toString(), TaskEntity.class);
+        params.forEach(typedQuery::setParameter);
+        typedQuery.setMaxResults(limit);
+        return track(typedQuery.getResultList());
+    }
+
+    /**
+     * Returns the same tasks as {@link #selectTasks(String, TaskCursor, int)}, but fetched lazily from a cursor. Every
+     * task is detached once it has been consumed, so the persistence context does not grow while the stream is being
+     * processed. The stream must be consumed before the repository is closed.
+     */
+    public Stream<TaskEntity> streamTasks(String userId, TaskCursor after, int limit) {
+        return streamDetached(createPageQuery(userId, after, limit), Math.min(limit, 100));
+    }
+
+    /**
+     * Returns all tasks of the user, fetched lazily like {@link #streamTasks(String, TaskCursor, int)}, so memory usage
+     * does not depend on the number of tasks. The tasks are ordered like pages, which follows the index on user,
+     * timestamp and task ID and needs no sorting.
+     */
+    public Stream<TaskEntity> streamAllTasks(String userId) {
+        return streamDetached(em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class).setParameter("userId", userId), 1000);
+    }
+
+    /**
+     * Returns the tasks of all users, fetched lazily and ordered by ID, which follows the primary key.
+     */
+    public Stream<TaskEntity> streamAllTasks() {
+        return streamDetached(em.createNamedQuery(TaskEntity.SELECT_ALL_BY_ID, TaskEntity.class), 1000);
+    }
+
+    private Stream<TaskEntity> streamDetached(TypedQuery<TaskEntity> query, int fetchSize) {
+        query.setHint("org.hibernate.fetchSize", fetchSize);
+        query.setHint("org.hibernate.readOnly", true);
+        return query.getResultStream().peek(em::detach);
+    }
+
+    private TypedQuery<TaskEntity> createPageQuery(String userId, TaskCursor after, int limit) {
+        TypedQuery<TaskEntity> query;
+        if (after == null) {
+            query = em.createNamedQuery(TaskEntity.SELECT_ALL, TaskEntity.class);
+        } else {
+            query = em.createNamedQuery(TaskEntity.SELECT_AFTER, TaskEntity.class);
+            query.setParameter("timestamp", after.timestamp());
+            query.setParameter("taskId", after.taskId());
+        }
+        query.setParameter("userId", userId);
+        query.setMaxResults(limit);
+        return query;
+    }
+
+    public TaskListVersion selectTaskListVersion(String userId) {
+        return em.createNamedQuery(TaskEntity.SELECT_VERSION, TaskListVersion.class) //
+                .setParameter("userId", userId) //
+                .getSingleResult();
+    }
+
+    /**
+     * Returns the task, or <code>null</code> if it does not exist or belongs to another user.
+     */
+    public TaskEntity selectTaskById(String userId, String taskId) {
+        return track(ownedBy(userId, em.find(TaskEntity.class, taskId)));
+    }
+
+    /**
+     * Returns the existing tasks of the user among the given IDs, in no particular order.
+     */
+    public List<TaskEntity> selectTasksByIds(String userId, Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return List.of();
+        }
+        return track(em.createNamedQuery(TaskEntity.SELECT_BY_IDS, TaskEntity.class) //
+                .setParameter("userId", userId) //
+                .setParameter("taskIds", taskIds) //
+                .getResultList());
     }
 
-    public TaskEntity selectTaskById(String taskId) {
-        return em.find(TaskEntity.class, taskId);
+    public List<String> selectTaskIds(String userId, Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return List.of();
+        }
+        return em.createNamedQuery(TaskEntity.SELECT_IDS, String.class) //
+                .setParameter("userId", userId) //
+                .setParameter("taskIds", taskIds) //
+                .getResultList();
+    }
+
+    /**
+     * Returns the IDs among the given ones that are used by tasks of any user.
+     */
+    public List<String> selectTakenTaskIds(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return List.of();
+        }
+        return em.createNamedQuery(TaskEntity.SELECT_TAKEN_IDS, String.class) //
+                .setParameter("taskIds", taskIds) //
+                .getResultList();
+    }
+
+    private static TaskEntity ownedBy(String userId, TaskEntity entity) {
+        return entity == null || !Objects.equals(entity.getUserId(), userId) ? null : entity;
     }
 
     public void createTask(TaskEntity entity) {
         em.persist(entity);
+        indexed.put(entity, null);
+    }
+
+    /**
+     * Deletes the tasks with the given IDs using a single statement, without loading them.
+     */
+    public int deleteTasksByIds(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return 0;
+        }
+        indexed.keySet().removeIf(entity -> taskIds.contains(entity.getTaskId()));
+        deleteWords(taskIds);
+        return em.createNamedQuery(TaskEntity.DELETE_BY_IDS) //
+                .setParameter("taskIds", taskIds) //
+                .executeUpdate();
+    }
+
+    /**
+     * Sets whether the task is done with a single statement, without loading it, provided that it belongs to the user
+     * and, if an expected timestamp is given, has not changed since. The task gets the new timestamp and version, and
+     * its words are moved to the new timestamp, so the search index stays in order. Returns the updated task, read
+     * after the update, or <code>null</code> if no task was updated.
+     */
+    public TaskEntity updateTaskDone(String userId, String taskId, boolean done, Instant timestamp, Instant expectedTimestamp) {
+        String jpql = "update TaskEntity t set t.done = :done, t.timestamp = :timestamp, t.version = coalesce(t.version, 0) + 1 " //
+                + "where t.taskId = :taskId and t.userId = :userId";
+        if (expectedTimestamp != null) {
+            jpql += " and t.timestamp = :expectedTimestamp";
+        }
+        var query = em.createQuery(jpql) //
+                .setParameter("done", done) //
+                .setParameter("timestamp", timestamp) //
+                .setParameter("taskId", taskId) //
+                .setParameter("userId", userId);
+        if (expectedTimestamp != null) {
+            query.setParameter("expectedTimestamp", expectedTimestamp);
+        }
+        if (query.executeUpdate() == 0) {
+            return null;
+        }
+        em.createQuery("update TaskWordEntity w set w.timestamp = :timestamp where w.taskId = :taskId") //
+                .setParameter("timestamp", timestamp) //
+                .setParameter("taskId", taskId) //
+                .executeUpdate();
+        TaskEntity entity = em.find(TaskEntity.class, taskId);
+        if (!timestamp.equals(entity.getTimestamp())) {
+            em.refresh(entity); // loaded before, the bulk update bypassed it
+        }
+        indexed.put(entity, new Indexed(entity));
+        return entity;
     }
 
     public void deleteTask(TaskEntity entity) {
+        indexed.remove(entity);
+        deleteWords(List.of(entity.getTaskId()));
         em.remove(entity);
     }
 
     public void updateChanges() {
+        writeWords();
+        em.flush();
+        writtenWords.forEach(em::detach);
+        writtenWords.clear();
+    }
+
+    /**
+     * Writes pending changes and detaches all entities. Bulk operations call this after every chunk, so the
+     * persistence context does not grow with the number of tasks.
+     */
+    public void updateChangesAndClear() {
+        writeWords();
         em.flush();
+        em.clear();
+        indexed.clear();
+        writtenWords.clear();
+    }
+
+    /**
+     * Indexes the words of all tasks, unless some words are indexed already. This fills the index of a database that
+     * was created before the index existed. Returns the number of tasks indexed.
+     */
+    public long fillSearchIndex() {
+        if (!em.createQuery("select w.word from TaskWordEntity w", String.class).setMaxResults(1).getResultList().isEmpty()) {
+            return 0;
+        }
+        long count = 0;
+        try(Stream<TaskEntity> tasks = streamAllTasks()) {
+            for (TaskEntity task : (Iterable<TaskEntity>) tasks::iterator) {
+                indexed.put(task, null);
+                if (++count % INDEX_CHUNK_SIZE == 0) {
+                    updateChangesAndClear();
+                }
+            }
+        }
+        updateChangesAndClear();
+        return count;
+    }
+
+    /**
+     * Returns whether the data migration with the given name has yet to be applied, and if so, records it as applied
+     * when the transaction commits. The check is a lookup by primary key, unlike the migrations, which read all tasks.
+     */
+    public boolean beginMigration(String name) {
+        if (isMigrationApplied(name)) {
+            return false;
+        }
+        em.persist(new MigrationEntity(name, Instant.now()));
+        return true;
+    }
+
+    public boolean isMigrationApplied(String name) {
+        return em.find(MigrationEntity.class, name) != null;
+    }
+
+    /**
+     * Sets the version of tasks created before tasks were versioned, so they can be updated. Returns the number of
+     * tasks changed.
+     */
+    public int fillVersions() {
+        return em.createQuery("update TaskEntity t set t.version = 0 where t.version is null").executeUpdate();
+    }
+
+    private TaskEntity track(TaskEntity entity) {
+        if (entity != null) {
+            indexed.putIfAbsent(entity, new Indexed(entity));
+        }
+        return entity;
+    }
+
+    private List<TaskEntity> track(List<TaskEntity> entities) {
+        entities.forEach(this::track);
+        return entities;
+    }
+
+    /**
+     * Replaces the words of the tracked tasks that have changed since they were indexed.
+     */
+    private void writeWords() {
+        List<TaskEntity> changed = new ArrayList<>();
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<TaskEntity, Indexed> entry : indexed.entrySet()) {
+            if (entry.getValue() == null || !entry.getValue().matches(entry.getKey())) {
+                changed.add(entry.getKey());
+                if (entry.getValue() != null) {
+                    stale.add(entry.getKey().getTaskId());
+                }
+            }
+        }
+        for (int start = 0; start < stale.size(); start += INDEX_CHUNK_SIZE) {
+            deleteWords(stale.subList(start, Math.min(start + INDEX_CHUNK_SIZE, stale.size())));
+        }
+        for (TaskEntity entity : changed) {
+            if (entity.getUserId() != null) {
+                for (String word : TaskWords.of(entity.getTitle(), entity.getDescription())) {
+                    TaskWordEntity taskWord = new TaskWordEntity(word, entity.getTaskId(), entity.getUserId(), entity.getTimestamp());
+                    em.persist(taskWord);
+                    writtenWords.add(taskWord);
+                }
+            }
+            indexed.put(entity, new Indexed(entity));
+        }
+    }
+
+    private void deleteWords(Collection<String> taskIds) {
+        em.createQuery("delete from TaskWordEntity w where w.taskId in :taskIds") //
+                .setParameter("taskIds", taskIds) //
+                .executeUpdate();
+    }
+
+    private record Indexed(String userId, Instant timestamp, String title, String description) {
+
+        Indexed(TaskEntity entity) {
+            this(entity.getUserId(), entity.getTimestamp(), entity.getTitle(), entity.getDescription());
+        }
+
+        boolean matches(TaskEntity entity) {
+            return Objects.equals(userId, entity.getUserId()) && Objects.equals(timestamp, entity.getTimestamp())
+                    && Objects.equals(title, entity.getTitle())
+                    && Objects.equals(description, entity.getDescription());
+        }
     }
 }
@@ -1,61 +1,474 @@
 package com.github.phoswald.sample.task;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import jakarta.persistence.OptimisticLockException;
+
+import com.github.phoswald.sample.utils.ETags;
+import com.github.phoswald.sample.utils.HttpResult;
 
 public class TaskResource {
 
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
     private final Supplier<TaskRepository> repositoryFactory;
+    private final TaskCache taskCache;
+    private final TaskEvents taskEvents;
+    private final TaskWriteBuffer writeBuffer;
+
+    public TaskResource(Supplier<TaskRepository> repositoryFactory, TaskCache taskCache, TaskEvents taskEvents) {
+        this(repositoryFactory, taskCache, taskEvents, null);
+    }
 
-    public TaskResource(Supplier<TaskRepository> repositoryFactory) {
+    /**
+     * Creates a resource that creates and updates single tasks through the given write buffer, so the writes of
+     * concurrent requests are committed in groups.
+     */
+    public TaskResource(Supplier<TaskRepository> repositoryFactory, TaskCache taskCache, TaskEvents taskEvents, TaskWriteBuffer writeBuffer) {
         this.repositoryFactory = repositoryFactory;
+        this.taskCache = taskCache;
+        this.taskEvents = taskEvents;
+        this.writeBuffer = writeBuffer;
     }
 
-    public List<TaskEntity> getTasks() {
-        try(TaskRepository repository = repositoryFactory.get()) {
-            List<TaskEntity> entities = repository.selectAllTasks();
-            return entities;
+    /**
+     * Returns a page of the user's tasks as a stream backed by an open repository, which is closed when the stream is
+     * closed. The entity tag is that of the user's whole task list, whose version is cached, and is determined before
+     * the tasks are read, so the returned tasks are never older than the tag.
+     */
+    public Object getTasks(String userId, String after, String limit, String ifNoneMatch) {
+        TaskCursor cursor;
+        int pageSize;
+        try {
+            cursor = after == null ? null : TaskCursor.parse(after);
+            pageSize = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+        } catch (IllegalArgumentException e) {
+            return HttpResult.status(400, e.getMessage());
+        }
+        if (pageSize < 1 || pageSize > MAX_LIMIT) {
+            return HttpResult.status(400, "Invalid limit: " + limit);
+        }
+        String etag = TaskETags.of(taskCache.getVersion(userId, key -> {
+            try(TaskRepository repository = repositoryFactory.get()) {
+                return repository.selectTaskListVersion(key);
+            }
+        }));
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return HttpResult.status(304).withHeader("ETag", etag);
+        }
+        TaskRepository repository = repositoryFactory.get();
+        try {
+            return HttpResult.ok(repository.streamTasks(userId, cursor, pageSize).onClose(repository::close)).withHeader("ETag", etag);
+        } catch (RuntimeException e) {
+            repository.close();
+            throw e;
         }
     }
 
-    public TaskEntity postTasks(TaskEntity request) {
+    /**
+     * Returns a page of the user's tasks that match the query, newest first. The next page follows the last task, like
+     * with {@link #getTasks(String, String, String, String)}.
+     */
+    public Object searchTasks(String userId, String text, String done, String from, String to, String after, String limit) {
+        TaskQuery query;
+        TaskCursor cursor;
+        int pageSize;
+        try {
+            query = TaskQuery.parse(text, done, from, to);
+            cursor = after == null ? null : TaskCursor.parse(after);
+            pageSize = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+        } catch (IllegalArgumentException e) {
+            return HttpResult.status(400, e.getMessage());
+        }
+        if (pageSize < 1 || pageSize > MAX_LIMIT) {
+            return HttpResult.status(400, "Invalid limit: " + limit);
+        }
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = new TaskEntity();
-            entity.setNewTaskId();
-            entity.setUserId("guest");
-            entity.setTimestamp(Instant.now());
+            return repository.selectTasksMatching(userId, query, cursor, pageSize);
+        }
+    }
+
+    public TaskEntity postTasks(String userId, TaskEntity request) {
+        TaskEntity entity = write(repository -> {
+            TaskEntity newEntity = new TaskEntity();
+            newEntity.setNewTaskId();
+            newEntity.setUserId(userId);
+            newEntity.setTimestamp(Instant.now());
+            newEntity.setTitle(request.getTitle());
+            newEntity.setDescription(request.getDescription());
+            newEntity.setDone(request.isDone());
+            repository.createTask(newEntity);
+            return newEntity;
+        });
+        taskCache.invalidateVersion(userId);
+        taskEvents.created(entity);
+        return entity;
+    }
+
+    public Object getTask(String userId, String id, String ifNoneMatch) {
+        TaskEntity entity = taskCache.get(userId, id, key -> {
+            try(TaskRepository repository = repositoryFactory.get()) {
+                return repository.selectTaskById(userId, key);
+            }
+        });
+        if (entity == null) {
+            return null;
+        }
+        String etag = TaskETags.of(entity);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            return HttpResult.status(304).withHeader("ETag", etag);
+        }
+        return HttpResult.ok(entity).withHeader("ETag", etag);
+    }
+
+    /**
+     * Updates the task, provided that <code>ifMatch</code> is absent or matches its current entity tag (otherwise the
+     * status is 412), and that the version of the request is absent or current (otherwise the status is 409). If the
+     * task is changed concurrently, after it was read here, the status is 409 as well.
+     */
+    public Object putTask(String userId, String id, String ifMatch, TaskEntity request) {
+        return updateTask(userId, id, ifMatch, request, entity -> {
             entity.setTitle(request.getTitle());
             entity.setDescription(request.getDescription());
             entity.setDone(request.isDone());
-            repository.createTask(entity);
-            return entity;
+        });
+    }
+
+    /**
+     * Updates the properties of the task that are present in the request, with the same preconditions as
+     * {@link #putTask(String, String, String, TaskEntity)}. Just setting whether the task is done, the most frequent
+     * change, is a single statement that checks the preconditions without loading the task first. The response has no
+     * body (status 204); the task is read after the update only for the event, so subscribers get all of it.
+     */
+    public Object patchTask(String userId, String id, String ifMatch, TaskEntity request) {
+        if (request.getTitle() == null && request.getDescription() == null && request.getVersion() == null && request.hasDone()) {
+            Instant expectedTimestamp = ifMatch == null || ifMatch.trim().equals("*") ? null : TaskETags.timestampOf(ifMatch);
+            if (ifMatch == null || ifMatch.trim().equals("*") || expectedTimestamp != null) {
+                return patchTaskDone(userId, id, expectedTimestamp, request.isDone());
+            }
+        }
+        return updateTask(userId, id, ifMatch, request, entity -> {
+            if (request.getTitle() != null) {
+                entity.setTitle(request.getTitle());
+            }
+            if (request.getDescription() != null) {
+                entity.setDescription(request.getDescription());
+            }
+            if (request.hasDone()) {
+                entity.setDone(request.isDone());
+            }
+        });
+    }
+
+    private Object patchTaskDone(String userId, String id, Instant expectedTimestamp, boolean done) {
+        Instant timestamp = Instant.now();
+        Object result = write(repository -> {
+            TaskEntity updated = repository.updateTaskDone(userId, id, done, timestamp, expectedTimestamp);
+            if (updated != null) {
+                return updated;
+            }
+            // only now it matters why, which takes another query
+            TaskEntity entity = expectedTimestamp == null ? null : repository.selectTaskById(userId, id);
+            return entity == null ? HttpResult.status(404) : HttpResult.status(412).withHeader("ETag", TaskETags.of(entity));
+        });
+        if (result instanceof HttpResult failed) {
+            return failed;
+        }
+        TaskEntity entity = (TaskEntity) result;
+        taskCache.invalidate(id);
+        taskCache.invalidateVersion(userId);
+        taskEvents.updated(entity);
+        return HttpResult.status(204).withHeader("ETag", TaskETags.of(entity));
+    }
+
+    private Object updateTask(String userId, String id, String ifMatch, TaskEntity request, Consumer<TaskEntity> update) {
+        HttpResult result;
+        try {
+            result = write(repository -> {
+                TaskEntity entity = repository.selectTaskById(userId, id);
+                if (entity == null) {
+                    return HttpResult.status(404);
+                }
+                if (ifMatch != null && !ETags.matches(ifMatch, TaskETags.of(entity))) {
+                    return HttpResult.status(412).withHeader("ETag", TaskETags.of(entity));
+                }
+                if (request.getVersion() != null && !request.getVersion().equals(entity.getVersion())) {
+                    return HttpResult.status(409, entity).withHeader("ETag", TaskETags.of(entity));
+                }
+                entity.setTimestamp(Instant.now());
+                update.accept(entity);
+                return HttpResult.ok(entity);
+            });
+        } catch (OptimisticLockException e) {
+            taskCache.invalidate(id);
+            return HttpResult.status(409);
+        }
+        if (result.status() != 200) {
+            return result;
         }
+        TaskEntity entity = (TaskEntity) result.body();
+        taskCache.invalidate(id);
+        taskCache.invalidateVersion(userId);
+        taskEvents.updated(entity);
+        return result.withHeader("ETag", TaskETags.of(entity));
     }
 
-    public TaskEntity getTask(String id) {
+    /**
+     * Runs the writes in a transaction and returns their result once it has committed. With a write buffer, the
+     * transaction is shared with the writes of concurrent requests, and the writes may run again if it fails, so they
+     * must create or load all entities they change themselves.
+     */
+    private <R> R write(Function<TaskRepository, R> writes) {
+        if (writeBuffer == null) {
+            try(TaskRepository repository = repositoryFactory.get()) {
+                return writes.apply(repository);
+            }
+        }
+        try {
+            return writeBuffer.submit(writes).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Creates all tasks in a single transaction. Inserts are sent in JDBC batches, and the persistence context is
+     * cleared after every chunk.
+     */
+    public List<TaskBatchResult> postTasksBatch(String userId, TaskEntity[] requests) {
+        List<TaskBatchResult> results = new ArrayList<>(requests.length);
+        List<TaskEntity> created = new ArrayList<>(requests.length);
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = repository.selectTaskById(id);
-            return entity;
+            Instant timestamp = Instant.now();
+            for (int i = 0; i < requests.length; i++) {
+                if (requests[i] == null) {
+                    results.add(new TaskBatchResult(null, 400));
+                    continue;
+                }
+                TaskEntity entity = new TaskEntity();
+                entity.setNewTaskId();
+                entity.setUserId(userId);
+                entity.setTimestamp(timestamp);
+                entity.setTitle(requests[i].getTitle());
+                entity.setDescription(requests[i].getDescription());
+                entity.setDone(requests[i].isDone());
+                repository.createTask(entity);
+                created.add(entity);
+                results.add(new TaskBatchResult(entity.getTaskId(), 201));
+                if ((i + 1) % BATCH_CHUNK_SIZE == 0) {
+                    repository.updateChangesAndClear();
+                }
+            }
         }
+        taskCache.invalidateVersion(userId);
+        created.forEach(taskEvents::created);
+        return results;
     }
 
-    public TaskEntity putTask(String id, TaskEntity request) {
+    /**
+     * Updates all tasks in a single transaction. The tasks of every chunk are loaded with one query, and the updates
+     * are sent in JDBC batches.
+     */
+    public List<TaskBatchResult> putTasksBatch(String userId, TaskEntity[] requests) {
+        List<TaskBatchResult> results = new ArrayList<>(requests.length);
+        List<TaskEntity> updated = new ArrayList<>(requests.length);
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = repository.selectTaskById(id);
-            entity.setTimestamp(Instant.now());
-            entity.setTitle(request.getTitle());
-            entity.setDescription(request.getDescription());
-            entity.setDone(request.isDone());
-            return entity;
+            Instant timestamp = Instant.now();
+            for (int start = 0; start < requests.length; start += BATCH_CHUNK_SIZE) {
+                List<TaskEntity> chunk = Arrays.asList(requests).subList(start, Math.min(start + BATCH_CHUNK_SIZE, requests.length));
+                Map<String, TaskEntity> entities = new HashMap<>();
+                for (TaskEntity entity : repository.selectTasksByIds(userId, chunk.stream().filter(Objects::nonNull).map(TaskEntity::getTaskId).filter(Objects::nonNull).toList())) {
+                    entities.put(entity.getTaskId(), entity);
+                }
+                for (TaskEntity request : chunk) {
+                    if (request == null || request.getTaskId() == null) {
+                        results.add(new TaskBatchResult(null, 400));
+                        continue;
+                    }
+                    TaskEntity entity = entities.get(request.getTaskId());
+                    if (entity == null) {
+                        results.add(new TaskBatchResult(request.getTaskId(), 404));
+                        continue;
+                    }
+                    if (request.getVersion() != null && !request.getVersion().equals(entity.getVersion())) {
+                        results.add(new TaskBatchResult(entity.getTaskId(), 409));
+                        continue;
+                    }
+                    entity.setTimestamp(timestamp);
+                    entity.setTitle(request.getTitle());
+                    entity.setDescription(request.getDescription());
+                    entity.setDone(request.isDone());
+                    updated.add(entity);
+                    results.add(new TaskBatchResult(entity.getTaskId(), 200));
+                }
+                repository.updateChangesAndClear();
+            }
+        }
+        invalidate(userId, results);
+        updated.forEach(taskEvents::updated);
+        return results;
+    }
+
+    /**
+     * Deletes all tasks in a single transaction, with one query and one delete statement per chunk.
+     */
+    public List<TaskBatchResult> deleteTasksBatch(String userId, String[] ids) {
+        List<TaskBatchResult> results = new ArrayList<>(ids.length);
+        try(TaskRepository repository = repositoryFactory.get()) {
+            for (int start = 0; start < ids.length; start += BATCH_CHUNK_SIZE) {
+                List<String> chunk = Arrays.asList(ids).subList(start, Math.min(start + BATCH_CHUNK_SIZE, ids.length));
+                Set<String> existing = new HashSet<>(repository.selectTaskIds(userId, chunk.stream().filter(Objects::nonNull).toList()));
+                repository.deleteTasksByIds(existing);
+                for (String id : chunk) {
+                    results.add(new TaskBatchResult(id, id == null ? 400 : existing.remove(id) ? 200 : 404));
+                }
+            }
+        }
+        invalidate(userId, results);
+        for (TaskBatchResult result : results) {
+            if (result.status() == 200) {
+                taskEvents.deleted(userId, result.taskId());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns all tasks of the user as a stream backed by an open repository, which is closed when the stream is
+     * closed.
+     */
+    public Stream<TaskEntity> exportTasks(String userId) {
+        TaskRepository repository = repositoryFactory.get();
+        try {
+            return repository.streamAllTasks(userId).onClose(repository::close);
+        } catch (RuntimeException e) {
+            repository.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts the tasks for the user, keeping IDs and timestamps, or replaces the user's existing tasks with the same
+     * ID, which get the time of the import as their timestamp (the user IDs of the imported tasks are ignored). Tasks whose ID belongs to a task of another user
+     * are not imported but reported. The tasks are consumed chunk by chunk, and every chunk is written in its own
+     * transaction, so neither memory nor the database transaction grows with the number of tasks. An import that
+     * failed part way can simply be repeated.
+     */
+    public TaskImportResult importTasks(String userId, Stream<TaskEntity> requests) {
+        long created = 0;
+        long updated = 0;
+        List<TaskBatchResult> rejected = new ArrayList<>();
+        Iterator<TaskEntity> iterator = requests.iterator();
+        List<TaskEntity> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == BATCH_CHUNK_SIZE || !iterator.hasNext()) {
+                int rejectedBefore = rejected.size();
+                long chunkUpdated = importChunk(userId, chunk, rejected);
+                created += chunk.size() - chunkUpdated - (rejected.size() - rejectedBefore);
+                updated += chunkUpdated;
+                chunk.clear();
+            }
+        }
+        return new TaskImportResult(created, updated, rejected);
+    }
+
+    private long importChunk(String userId, List<TaskEntity> requests, List<TaskBatchResult> rejected) {
+        List<TaskEntity> created = new ArrayList<>();
+        List<TaskEntity> updated = new ArrayList<>();
+        try(TaskRepository repository = repositoryFactory.get()) {
+            Map<String, TaskEntity> entities = new HashMap<>();
+            for (TaskEntity entity : repository.selectTasksByIds(userId, requests.stream().map(TaskEntity::getTaskId).filter(Objects::nonNull).toList())) {
+                entities.put(entity.getTaskId(), entity);
+            }
+            // IDs that are not the user's but are taken by another user, which would violate the primary key
+            Set<String> taken = new HashSet<>(repository.selectTakenTaskIds(requests.stream().map(TaskEntity::getTaskId)
+                    .filter(id -> id != null && !entities.containsKey(id)).toList()));
+            Instant timestamp = Instant.now();
+            for (TaskEntity request : requests) {
+                if (request.getTaskId() == null) {
+                    request.setNewTaskId();
+                } else if (taken.contains(request.getTaskId())) {
+                    rejected.add(new TaskBatchResult(request.getTaskId(), 409));
+                    continue;
+                }
+                request.setUserId(userId);
+                request.setVersion(null); // versions are local to the database, and a new task must not have one
+                if (request.getTimestamp() == null) {
+                    request.setTimestamp(Instant.now());
+                }
+                TaskEntity entity = entities.get(request.getTaskId());
+                if (entity == null) {
+                    repository.createTask(request);
+                    entities.put(request.getTaskId(), request);
+                    created.add(request);
+                } else {
+                    entity.setTimestamp(timestamp); // a change, so the entity tags of the task and the task list must change
+                    entity.setTitle(request.getTitle());
+                    entity.setDescription(request.getDescription());
+                    entity.setDone(request.isDone());
+                    updated.add(entity);
+                }
+            }
+        }
+        updated.forEach(entity -> taskCache.invalidate(entity.getTaskId()));
+        taskCache.invalidateVersion(userId);
+        created.forEach(taskEvents::created);
+        updated.forEach(taskEvents::updated);
+        return updated.size();
+    }
+
+    private void invalidate(String userId, List<TaskBatchResult> results) {
+        for (TaskBatchResult result : results) {
+            if (result.status() == 200) {
+                taskCache.invalidate(result.taskId());
+            }
         }
+        taskCache.invalidateVersion(userId);
     }
 
-    public String deleteTask(String id) {
+    public String deleteTask(String userId, String id) {
         try(TaskRepository repository = repositoryFactory.get()) {
-            TaskEntity entity = repository.selectTaskById(id);
+            TaskEntity entity = repository.selectTaskById(userId, id);
+            if (entity == null) {
+                return null;
+            }
             repository.deleteTask(entity);
-            return "";
         }
+        taskCache.invalidate(id);
+        taskCache.invalidateVersion(userId);
+        taskEvents.deleted(userId, id);
+        return "";
+    }
+
+    /**
+     * Subscribes to the changes of the user's tasks, resuming after the given event ID if present, and returns the
+     * action that unsubscribes. An ID that is not a number is treated like an unknown one, so the subscriber is told to
+     * reload the tasks.
+     */
+    public Runnable subscribeTaskEvents(String userId, String lastEventId, Consumer<TaskEvent> subscriber) {
+        Long afterId;
+        try {
+            afterId = lastEventId == null ? null : Long.valueOf(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            afterId = Long.MIN_VALUE;
+        }
+        return taskEvents.subscribe(userId, afterId, subscriber);
     }
 }
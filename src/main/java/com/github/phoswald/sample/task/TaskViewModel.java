@@ -14,6 +14,7 @@ public class TaskViewModel {
     public String title;
     public String description;
     public boolean done;
+    public Long version;
 
     public TaskViewModel(TaskEntity entity) {
         this.taskId = entity.getTaskId();
@@ -21,6 +22,7 @@ public class TaskViewModel {
         this.title = entity.getTitle();
         this.description = entity.getDescription();
         this.done = entity.isDone();
+        this.version = entity.getVersion();
     }
 
     public static List<TaskViewModel> newList(List<TaskEntity> entities) {
@@ -0,0 +1,67 @@
+package com.github.phoswald.sample.task;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Entry of the inverted index for searching tasks: one row per distinct word of a task's title and description.
+ * <p>
+ * The row carries the task's user and timestamp, so the index on user, word, timestamp and task ID returns the newest
+ * tasks of a user with a word first, and a search can stop after a page of tasks however many contain the word. The
+ * rows are written by {@link TaskRepository} along with the tasks.
+ */
+@Entity
+@IdClass(TaskWordEntity.Key.class)
+@Table(name = "task_word_", indexes = { //
+        @Index(name = "task_word_word_ix_", columnList = "user_id_, word_, timestamp_ desc, task_id_ desc"), //
+        @Index(name = "task_word_task_ix_", columnList = "task_id_") })
+public class TaskWordEntity {
+
+    @Id
+    @Column(name = "word_", length = TaskWords.MAX_LENGTH)
+    private String word;
+
+    @Id
+    @Column(name = "task_id_")
+    private String taskId;
+
+    @Column(name = "user_id_", nullable = false)
+    private String userId;
+
+    @Column(name = "timestamp_")
+    private Instant timestamp;
+
+    protected TaskWordEntity() { }
+
+    TaskWordEntity(String word, String taskId, String userId, Instant timestamp) {
+        this.word = word;
+        this.taskId = taskId;
+        this.userId = userId;
+        this.timestamp = timestamp;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public record Key(String word, String taskId) implements Serializable { }
+}
@@ -0,0 +1,36 @@
+package com.github.phoswald.sample.task;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into the words that are indexed and searched: maximal runs of letters and digits, in lower case.
+ * Words longer than the index column are truncated.
+ */
+public final class TaskWords {
+
+    static final int MAX_LENGTH = 64;
+
+    private TaskWords() { }
+
+    public static Set<String> of(String... texts) {
+        Set<String> words = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    words.add(text.substring(start, Math.min(i, start + MAX_LENGTH)).toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+            }
+        }
+        return words;
+    }
+}
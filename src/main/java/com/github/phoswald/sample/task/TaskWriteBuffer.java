@@ -0,0 +1,199 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.phoswald.sample.utils.Metrics;
+
+/**
+ * Write-behind buffer that commits the writes of concurrent requests in groups (group commit).
+ * <p>
+ * Writes are queued, and a single writer thread runs the writes queued within <code>maxDelay</code> of the first one,
+ * but at most <code>maxSize</code> of them, in one transaction. Every caller gets its result once the transaction of its
+ * group has committed, so it waits up to <code>maxDelay</code> longer than with a transaction of its own, but the
+ * database commits (and syncs its log) once per group instead of once per write, and only one connection is used.
+ * The writer only waits for more writes if the previous group had several, so a lone writer is not delayed; under
+ * load, writes queue up anyway while the previous group commits.
+ * <p>
+ * The changes of every write are flushed before the next one runs, so versions are incremented and a later write of
+ * the same group that expected the old version fails like it would in a transaction of its own. Its entities are then
+ * detached, so the result of a write is not changed by a later write of the same group that loads the same task.
+ * <p>
+ * If a group fails, its writes are run again one by one, each in a transaction of its own, so a failing write only fails
+ * its own caller. Writes must therefore be repeatable: they must not depend on objects changed by an earlier attempt,
+ * for example they create new entities rather than persist given ones.
+ */
+public final class TaskWriteBuffer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskWriteBuffer.class);
+
+    private final Supplier<TaskRepository> repositoryFactory;
+    private final int maxSize;
+    private final long maxDelayNanos;
+    private final Metrics.Histogram durations;
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final Write<?> closeMarker = new Write<>(repository -> null);
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final Thread thread;
+    private boolean closed;
+    private int lastGroupSize; // of the writer thread
+
+    /**
+     * Creates a buffer and starts its writer thread. The given histogram, if any, records the durations from queuing a
+     * write to the commit of its group.
+     */
+    public TaskWriteBuffer(Supplier<TaskRepository> repositoryFactory, int maxSize, Duration maxDelay, Metrics.Histogram durations) {
+        this.repositoryFactory = repositoryFactory;
+        this.maxSize = maxSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.durations = durations;
+        this.thread = new Thread(this::run, "task-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a write and returns its result, which completes once its group has committed.
+     */
+    public <R> CompletableFuture<R> submit(Function<TaskRepository, R> operation) {
+        Write<R> write = new Write<>(operation);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Write buffer is closed");
+            }
+            queue.add(write);
+        }
+        return write.result;
+    }
+
+    /**
+     * Returns the number of groups committed, including single writes run again after their group failed.
+     */
+    public long groups() {
+        return groups.sum();
+    }
+
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * Commits the writes queued so far, and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(closeMarker);
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Write<?>> group = new ArrayList<>(maxSize);
+        boolean closing = false;
+        while (!closing) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + (lastGroupSize > 1 ? maxDelayNanos : 0);
+                while (group.size() < maxSize && group.get(group.size() - 1) != closeMarker) {
+                    // once the deadline has passed, this still takes the writes that are queued already
+                    Write<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Writer interrupted, committing {} queued writes", group.size());
+                closing = true;
+            }
+            closing |= group.remove(closeMarker);
+            if (!group.isEmpty()) {
+                commit(group);
+                lastGroupSize = group.size();
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<Write<?>> group) {
+        try {
+            try(TaskRepository repository = repositoryFactory.get()) {
+                try {
+                    for (Write<?> write : group) {
+                        write.apply(repository);
+                        // the next write must see the versions incremented by this one, to detect conflicting updates,
+                        // and must not change the entities this one returns
+                        repository.updateChangesAndClear();
+                    }
+                } catch (RuntimeException | Error e) {
+                    repository.setRollbackOnly(); // the writes before the failed one must not be committed
+                    throw e;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            if (group.size() == 1) {
+                group.get(0).fail(e);
+            } else {
+                logger.debug("Group of {} writes failed, running them one by one", group.size(), e);
+                group.forEach(write -> commit(List.of(write)));
+            }
+            return;
+        }
+        groups.increment();
+        writes.add(group.size());
+        group.forEach(Write::complete);
+    }
+
+    private final class Write<R> {
+
+        private final Function<TaskRepository, R> operation;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private R value;
+
+        Write(Function<TaskRepository, R> operation) {
+            this.operation = operation;
+        }
+
+        void apply(TaskRepository repository) {
+            value = operation.apply(repository);
+        }
+
+        void complete() {
+            record();
+            result.complete(value);
+        }
+
+        void fail(Throwable failure) {
+            record();
+            result.completeExceptionally(failure);
+        }
+
+        private void record() {
+            if (durations != null) {
+                durations.record(System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
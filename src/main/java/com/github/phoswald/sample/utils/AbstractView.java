@@ -1,5 +1,9 @@
 package com.github.phoswald.sample.utils;
 
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.templatemode.TemplateMode;
@@ -7,7 +11,9 @@ import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 
 public abstract class AbstractView<T> {
 
-    private static final TemplateEngine templateEngine = createTemplateEngine();
+    private static volatile TemplateEngine templateEngine = createTemplateEngine(true, null);
+    private static volatile Metrics metrics = null;
+    private static final Map<String, Metrics.Histogram> renderDurations = new ConcurrentHashMap<>();
     private final String templateName;
     private final String modelName;
 
@@ -16,19 +22,69 @@ public abstract class AbstractView<T> {
         this.modelName = modelName;
     }
 
-    public String render(T model) {
+    /**
+     * Configures template caching. Parsed templates are cached for the lifetime of the process unless
+     * <code>app.templates.cache</code> is <code>false</code>. For development, <code>app.templates.cache-ttl</code>
+     * (milliseconds) makes cached templates expire, so changes are picked up without a restart.
+     */
+    public static void configure(ConfigProvider config) {
+        boolean cacheable = Boolean.parseBoolean(config.getConfigProperty("app.templates.cache").orElse("true"));
+        Long cacheTtlMs = config.getConfigProperty("app.templates.cache-ttl").map(Long::valueOf).orElse(null);
+        templateEngine = createTemplateEngine(cacheable, cacheTtlMs);
+    }
+
+    /**
+     * Configures template caching as above, and records how long it takes to render each template.
+     */
+    public static void configure(ConfigProvider config, Metrics metrics) {
+        configure(config);
+        renderDurations.clear();
+        AbstractView.metrics = metrics;
+    }
+
+    /**
+     * Returns the page for the given model. The template is processed when the page is written.
+     */
+    public HtmlPage render(T model) {
+        return new HtmlPage(writer -> {
+            long startNanos = System.nanoTime();
+            Context context = new Context();
+            context.setVariable(modelName, model);
+            templateEngine.process(templateName, context, writer);
+            Metrics.Histogram durations = renderDurations();
+            if (durations != null) {
+                durations.record(System.nanoTime() - startNanos);
+            }
+        });
+    }
+
+    /**
+     * Parses the template into the cache. An empty map stands in for the model, so every expression evaluates to
+     * <code>null</code> instead of failing.
+     */
+    public void warmUp() {
         Context context = new Context();
-        context.setVariable(modelName, model);
-        String page = templateEngine.process(templateName, context);
-        return page;
+        context.setVariable(modelName, Map.of());
+        templateEngine.process(templateName, context, Writer.nullWriter());
+    }
+
+    private Metrics.Histogram renderDurations() {
+        Metrics metrics = AbstractView.metrics;
+        Metrics.Histogram durations = renderDurations.get(templateName);
+        if (durations != null || metrics == null) {
+            return durations;
+        }
+        return renderDurations.computeIfAbsent(templateName, key -> metrics.histogram("app_template_render_duration_seconds",
+                "Duration of rendering templates, including writing the output.", "template", key));
     }
 
-    private static TemplateEngine createTemplateEngine() {
+    private static TemplateEngine createTemplateEngine(boolean cacheable, Long cacheTtlMs) {
         ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver(AbstractView.class.getClassLoader());
         templateResolver.setTemplateMode(TemplateMode.HTML);
         templateResolver.setPrefix("templates/");
         templateResolver.setSuffix(".html");
-        templateResolver.setCacheable(false); // defaults to true, use false to update when modified
+        templateResolver.setCacheable(cacheable);
+        templateResolver.setCacheTTLMs(cacheTtlMs);
 
         TemplateEngine templateEngine = new TemplateEngine();
         templateEngine.setTemplateResolver(templateResolver);
@@ -0,0 +1,91 @@
+package com.github.phoswald.sample.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.http.HttpException;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+
+/**
+ * Reads a request body chunk by chunk using <code>Content.Source.read()</code> and <code>demand()</code>, without
+ * blocking a thread while waiting for the client.
+ */
+public class BodyReader implements Runnable {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Content.Source source;
+    private final int maxSize;
+    private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+    private byte[] bytes = EMPTY;
+    private int size;
+
+    private BodyReader(Content.Source source, int maxSize) {
+        this.source = source;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a future that completes with the entire body, or fails with status 413 if the body exceeds
+     * <code>maxSize</code> bytes.
+     */
+    public static CompletableFuture<byte[]> read(Content.Source source, int maxSize) {
+        BodyReader reader = new BodyReader(source, maxSize);
+        if (source.getLength() > maxSize) {
+            reader.future.completeExceptionally(tooLarge(maxSize));
+        } else {
+            reader.run();
+        }
+        return reader.future;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Content.Chunk chunk = source.read();
+            if (chunk == null) {
+                source.demand(this);
+                return;
+            }
+            if (Content.Chunk.isFailure(chunk)) {
+                future.completeExceptionally(chunk.getFailure());
+                return;
+            }
+            boolean last = chunk.isLast();
+            try {
+                if (!append(chunk.getByteBuffer())) {
+                    future.completeExceptionally(tooLarge(maxSize));
+                    return;
+                }
+            } finally {
+                chunk.release();
+            }
+            if (last) {
+                future.complete(size == bytes.length ? bytes : Arrays.copyOf(bytes, size));
+                return;
+            }
+        }
+    }
+
+    private boolean append(ByteBuffer buffer) {
+        int remaining = buffer.remaining();
+        if (remaining == 0) {
+            return true;
+        }
+        if (size + remaining > maxSize) {
+            return false;
+        }
+        if (size + remaining > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.min(maxSize, Math.max(size + remaining, bytes.length * 2)));
+        }
+        buffer.get(bytes, size, remaining);
+        size += remaining;
+        return true;
+    }
+
+    private static HttpException.RuntimeException tooLarge(int maxSize) {
+        return new HttpException.RuntimeException(HttpStatus.PAYLOAD_TOO_LARGE_413, "Body exceeds " + maxSize + " bytes");
+    }
+}
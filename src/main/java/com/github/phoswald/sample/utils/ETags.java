@@ -0,0 +1,32 @@
+package com.github.phoswald.sample.utils;
+
+/**
+ * Evaluates the conditional request headers <code>If-Match</code> and <code>If-None-Match</code>.
+ */
+public final class ETags {
+
+    private ETags() { }
+
+    /**
+     * Returns <code>true</code> if the header value (a list of entity tags, or <code>*</code>) contains the given
+     * entity tag. Weak tags compare equal to their strong counterparts, which is what <code>If-None-Match</code>
+     * requires and good enough for <code>If-Match</code> here, since tags are never reused for different content.
+     */
+    public static boolean matches(String header, String etag) {
+        if (header == null || etag == null) {
+            return false;
+        }
+        String opaqueTag = opaque(etag);
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
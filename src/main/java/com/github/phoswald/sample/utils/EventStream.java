@@ -0,0 +1,157 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+
+/**
+ * Writes server-sent events (<code>text/event-stream</code>) to a response without blocking.
+ * <p>
+ * Events are queued, and whichever thread finds the stream idle writes all queued events at once, so an open stream
+ * holds no thread while there is nothing to send. A client that falls more than <code>maxQueue</code> events behind is
+ * disconnected rather than buffered without bounds. Closing the stream completes the response after the queued
+ * events have been written.
+ */
+public class EventStream {
+
+    private final Response response;
+    private final Callback callback;
+    private final int maxQueue;
+    private final Deque<String> queue = new ArrayDeque<>();
+    private final List<Runnable> closeListeners = new ArrayList<>();
+    private final Writer writer = new Writer();
+    private boolean closing;
+    private boolean closed;
+    private Throwable failure;
+
+    public EventStream(Response response, Callback callback, int maxQueue) {
+        this.response = response;
+        this.callback = callback;
+        this.maxQueue = maxQueue;
+    }
+
+    /**
+     * Queues an event. The data must not contain line breaks, which holds for JSON without pretty printing.
+     */
+    public void send(String id, String type, String data) {
+        StringBuilder frame = new StringBuilder();
+        if (id != null) {
+            frame.append("id: ").append(id).append('\n');
+        }
+        if (type != null) {
+            frame.append("event: ").append(type).append('\n');
+        }
+        frame.append("data: ").append(data == null ? "" : data).append("\n\n");
+        enqueue(frame.toString());
+    }
+
+    /**
+     * Queues a comment, which clients ignore. Sent periodically, it keeps idle connections open and detects clients
+     * that have gone.
+     */
+    public void ping() {
+        enqueue(":\n\n");
+    }
+
+    public void close() {
+        synchronized (this) {
+            closing = true;
+        }
+        writer.iterate();
+    }
+
+    /**
+     * Completes the response with the given failure, without writing the queued events.
+     */
+    public void fail(Throwable cause) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = cause;
+            }
+            closing = true;
+        }
+        writer.iterate();
+    }
+
+    /**
+     * Registers an action to run when the response is complete, or runs it now if it is complete already.
+     */
+    public void onClose(Runnable listener) {
+        synchronized (this) {
+            if (!closed) {
+                closeListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void enqueue(String frame) {
+        synchronized (this) {
+            if (closing) {
+                return;
+            }
+            if (queue.size() >= maxQueue) {
+                failure = new IOException("Client too slow, more than " + maxQueue + " events queued");
+                closing = true;
+            } else {
+                queue.add(frame);
+            }
+        }
+        writer.iterate();
+    }
+
+    private void completed() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            listeners = new ArrayList<>(closeListeners);
+            closeListeners.clear();
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    private final class Writer extends IteratingCallback {
+
+        @Override
+        protected Action process() throws Throwable {
+            String frames;
+            synchronized (EventStream.this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (queue.isEmpty()) {
+                    return closing ? Action.SUCCEEDED : Action.IDLE;
+                }
+                StringBuilder builder = new StringBuilder();
+                while (!queue.isEmpty()) {
+                    builder.append(queue.poll());
+                }
+                frames = builder.toString();
+            }
+            response.write(false, ByteBuffer.wrap(frames.getBytes(StandardCharsets.UTF_8)), this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        protected void onCompleteSuccess() {
+            completed();
+            callback.succeeded();
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable cause) {
+            completed();
+            callback.failed(cause);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * A page that is rendered only when it is written, so the HTML is streamed to the writer and never held in memory
+ * as a whole.
+ */
+public final class HtmlPage {
+
+    private final Consumer<Writer> renderer;
+
+    HtmlPage(Consumer<Writer> renderer) {
+        this.renderer = renderer;
+    }
+
+    public void writeTo(Writer writer) {
+        renderer.accept(writer);
+    }
+
+    @Override
+    public String toString() {
+        StringWriter writer = new StringWriter();
+        writeTo(writer);
+        return writer.toString();
+    }
+}
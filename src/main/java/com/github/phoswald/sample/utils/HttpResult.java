@@ -0,0 +1,28 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A handler result with an explicit status code and headers. The body is handled like a plain handler result.
+ */
+public record HttpResult(int status, Map<String, String> headers, Object body) {
+
+    public static HttpResult ok(Object body) {
+        return new HttpResult(200, Map.of(), body);
+    }
+
+    public static HttpResult status(int status) {
+        return new HttpResult(status, Map.of(), null);
+    }
+
+    public static HttpResult status(int status, Object body) {
+        return new HttpResult(status, Map.of(), body);
+    }
+
+    public HttpResult withHeader(String name, String value) {
+        Map<String, String> newHeaders = new LinkedHashMap<>(headers);
+        newHeaders.put(name, value);
+        return new HttpResult(status, newHeaders, body);
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of counters, gauges and histograms, written in the Prometheus text format.
+ * <p>
+ * Registering a metric returns the existing one if a metric with the same name and labels exists, so it is cheap
+ * to look up but not free; callers on hot paths keep the returned instance. Recording is lock-free and does not
+ * allocate.
+ */
+public class Metrics {
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Returns the counter with the given name and labels (pairs of label name and value).
+     */
+    public synchronized Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(formatLabels(labels), key -> new Counter());
+    }
+
+    /**
+     * Registers a counter whose value is maintained elsewhere, replacing an existing one with the same labels.
+     */
+    public synchronized void counter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").series.put(formatLabels(labels), value);
+    }
+
+    /**
+     * Registers a gauge, replacing an existing one with the same labels.
+     */
+    public synchronized void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(formatLabels(labels), value);
+    }
+
+    /**
+     * Returns the histogram with the given name and labels (pairs of label name and value).
+     */
+    public synchronized Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").series.computeIfAbsent(formatLabels(labels), key -> new Histogram());
+    }
+
+    public void write(Writer writer) throws IOException {
+        List<Map.Entry<String, Family>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>();
+            families.forEach((name, family) -> snapshot.add(Map.entry(name, family.copy())));
+        }
+        for (Map.Entry<String, Family> entry : snapshot) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            writer.write("# HELP " + name + " " + family.help + "\n");
+            writer.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                switch (series.getValue()) {
+                    case Counter counter -> writeSample(writer, name, labels, counter.get());
+                    case DoubleSupplier value -> writeSample(writer, name, labels, value.getAsDouble());
+                    case Histogram histogram -> histogram.write(writer, name, labels);
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type, new LinkedHashMap<>()));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be pairs of name and value");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            result.append(i == 0 ? "" : ",").append(labels[i]).append("=\"");
+            result.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return result.toString();
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name);
+        if (!labels.isEmpty()) {
+            writer.write("{" + labels + "}");
+        }
+        writer.write(" " + formatValue(value) + "\n");
+    }
+
+    private static String formatValue(double value) {
+        return value == (long) value ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private record Family(String help, String type, Map<String, Object> series) {
+        Family copy() {
+            return new Family(help, type, new LinkedHashMap<>(series));
+        }
+    }
+
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Histogram of durations with log-linear buckets like HdrHistogram: two buckets per power of two, so percentiles
+     * derived from it (with <code>histogram_quantile()</code>) are accurate to within a third of the value. The bucket
+     * of a value is computed from its bits, without searching.
+     */
+    public static final class Histogram {
+
+        private static final int FIRST_OCTAVE = 6; // 64 microseconds
+        private static final int OCTAVES = 20; // the last finite bucket ends at 1.5 * 2^25 microseconds, about 50 seconds
+        private static final int BUCKETS = OCTAVES * 2 + 1;
+        private static final String[] BOUNDS = new String[BUCKETS];
+
+        static {
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                BOUNDS[i] = BigDecimal.valueOf(upperBoundMicros(i), 6).stripTrailingZeros().toPlainString();
+            }
+            BOUNDS[BUCKETS - 1] = "+Inf";
+        }
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void record(long nanos) {
+            buckets[bucketOf(nanos / 1000)].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        static int bucketOf(long micros) {
+            if (micros <= 1L << FIRST_OCTAVE) {
+                return 0;
+            }
+            long value = micros - 1;
+            int octave = 63 - Long.numberOfLeadingZeros(value);
+            int upperHalf = (int) (value >> (octave - 1)) & 1;
+            return Math.min(2 * (octave - FIRST_OCTAVE) + 1 + upperHalf, BUCKETS - 1);
+        }
+
+        static long upperBoundMicros(int bucket) {
+            int octave = FIRST_OCTAVE + bucket / 2;
+            return bucket % 2 == 0 ? 1L << octave : 3L << (octave - 1);
+        }
+
+        private void write(Writer writer, String name, String labels, String separator) throws IOException {
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += buckets[i].sum();
+                writer.write(name + "_bucket{" + labels + separator + "le=\"" + BOUNDS[i] + "\"} " + cumulative + "\n");
+            }
+            writeSample(writer, name + "_sum", labels, sumNanos.sum() / 1e9);
+            writeSample(writer, name + "_count", labels, cumulative);
+        }
+
+        private void write(Writer writer, String name, String labels) throws IOException {
+            write(writer, name, labels, labels.isEmpty() ? "" : ",");
+        }
+    }
+}
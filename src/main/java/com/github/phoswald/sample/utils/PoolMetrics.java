@@ -0,0 +1,98 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Metrics of a HikariCP connection pool: the current number of connections by state, how long threads waited to
+ * acquire a connection, how long they kept it, and how often they gave up waiting.
+ */
+public final class PoolMetrics implements MetricsTrackerFactory {
+
+    private volatile PoolStats stats;
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator acquireMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final Metrics.Histogram acquireDurations;
+
+    public PoolMetrics() {
+        this(new Metrics());
+    }
+
+    /**
+     * Creates the pool metrics and also publishes them in the given registry.
+     */
+    public PoolMetrics(Metrics metrics) {
+        String help = "Connections of the JDBC pool by state.";
+        metrics.gauge("app_jdbc_pool_connections", help, () -> snapshot().active(), "state", "active");
+        metrics.gauge("app_jdbc_pool_connections", help, () -> snapshot().idle(), "state", "idle");
+        metrics.gauge("app_jdbc_pool_connections_max", "Maximum number of connections of the JDBC pool.", () -> snapshot().max());
+        metrics.gauge("app_jdbc_pool_pending_threads", "Threads waiting for a connection of the JDBC pool.", () -> snapshot().pending());
+        metrics.counter("app_jdbc_pool_timeouts_total", "Number of times a thread gave up waiting for a connection.", timeouts::sum);
+        acquireDurations = metrics.histogram("app_jdbc_pool_acquire_duration_seconds", "Time waited to acquire a connection of the JDBC pool.");
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.stats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                acquireMaxNanos.accumulate(elapsedAcquiredNanos);
+                acquireDurations.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    public Snapshot snapshot() {
+        PoolStats stats = this.stats;
+        long acquired = acquireCount.sum();
+        long used = usageCount.sum();
+        return new Snapshot( //
+                stats == null ? 0 : stats.getActiveConnections(), //
+                stats == null ? 0 : stats.getIdleConnections(), //
+                stats == null ? 0 : stats.getTotalConnections(), //
+                stats == null ? 0 : stats.getMaxConnections(), //
+                stats == null ? 0 : stats.getPendingThreads(), //
+                acquired, //
+                acquired == 0 ? 0 : acquireNanos.sum() / 1e6 / acquired, //
+                acquireMaxNanos.get() / 1e6, //
+                used == 0 ? 0 : (double) usageMillis.sum() / used, //
+                timeouts.sum());
+    }
+
+    /**
+     * Current connections by state, and totals since the pool was started (times in milliseconds).
+     */
+    public record Snapshot( //
+            int active, //
+            int idle, //
+            int total, //
+            int max, //
+            int pending, //
+            long acquired, //
+            double acquireMeanMillis, //
+            double acquireMaxMillis, //
+            double usageMeanMillis, //
+            long timeouts) { }
+}
@@ -0,0 +1,87 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per key (such as a user ID): every key may take up to <code>burst</code> permits at once, which are
+ * refilled at <code>permitsPerSecond</code>.
+ * <p>
+ * Buckets that have refilled completely are the same as new ones, so they are dropped once there are more than
+ * <code>maxKeys</code> buckets. Memory is then bounded by the number of keys that were active recently. The next sweep
+ * is due when the number of buckets has doubled since, or exceeds <code>maxKeys</code> again, whichever is later, so
+ * every sweep is paid for by at least as many new keys as it visits buckets.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final int maxKeys;
+    private final LongSupplier clock;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile int sweepSize;
+
+    public RateLimiter(double permitsPerSecond, double burst, int maxKeys) {
+        this(permitsPerSecond, burst, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, double burst, int maxKeys, LongSupplier clock) {
+        this.permitsPerNano = permitsPerSecond / 1e9;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.sweepSize = maxKeys;
+    }
+
+    /**
+     * Takes a permit for the key, and returns <code>false</code> without waiting if there is none.
+     */
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong();
+        if (buckets.size() > sweepSize && sweeping.compareAndSet(false, true)) {
+            try {
+                buckets.values().removeIf(bucket -> bucket.isFull(now));
+                sweepSize = Math.max(maxKeys, 2 * buckets.size());
+            } finally {
+                sweeping.set(false);
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new Bucket(now)).tryAcquire(now);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private final class Bucket {
+
+        private double permits = burst;
+        private long updated;
+
+        Bucket(long now) {
+            this.updated = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            refill(now);
+            if (permits < 1) {
+                return false;
+            }
+            permits--;
+            return true;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return permits >= burst;
+        }
+
+        private void refill(long now) {
+            permits = Math.min(burst, permits + (now - updated) * permitsPerNano);
+            updated = now;
+        }
+    }
+}
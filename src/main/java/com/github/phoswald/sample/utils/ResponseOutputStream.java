@@ -0,0 +1,109 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Blocker;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Streams a response body through a single pooled buffer.
+ * <p>
+ * Whenever the buffer is full, it is written to the response and the stream waits until the write completes, so a
+ * slow client applies backpressure instead of the response being accumulated in memory. Serializers push their
+ * output, so this is the only point where a thread can block. The last chunk is written by {@link #complete(Callback)}
+ * without waiting; if everything fits into the buffer, the response is sent with a <code>Content-Length</code> and
+ * never blocks the calling thread. Closing the stream only ends the body, because serializers close the streams they
+ * write to.
+ * <p>
+ * {@link #flush()} does not send a partially filled buffer. Writers and serializers flush eagerly, and sending their
+ * output as a non-last chunk would prevent both the <code>Content-Length</code> and the minimum size check of the
+ * response compression.
+ */
+public class ResponseOutputStream extends OutputStream {
+
+    private final Response response;
+    private final RetainableByteBuffer.Mutable buffer;
+    private boolean closed;
+    private boolean released;
+
+    public ResponseOutputStream(Request request, Response response) {
+        this.response = response;
+        int bufferSize = request.getConnectionMetaData().getHttpConfiguration().getOutputBufferSize();
+        this.buffer = request.getComponents().getByteBufferPool().acquire(bufferSize, false);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (buffer.isFull()) {
+            writeBuffer();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (buffer.isFull()) {
+                writeBuffer();
+            }
+            int count = (int) Math.min(length, buffer.space());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Writes the last chunk asynchronously and completes the callback once it has been sent.
+     */
+    public void complete(Callback callback) {
+        closed = true;
+        if (released) {
+            callback.failed(new IOException("Stream is completed"));
+            return;
+        }
+        released = true;
+        response.write(true, buffer.getByteBuffer(), Callback.from(buffer::release, callback));
+    }
+
+    /**
+     * Releases the buffer without completing the response, for use when producing the body failed.
+     */
+    public void abort() {
+        closed = true;
+        if (!released) {
+            released = true;
+            buffer.release();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        try (Blocker.Callback callback = Blocker.callback()) {
+            response.write(false, buffer.getByteBuffer(), callback);
+            callback.block();
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
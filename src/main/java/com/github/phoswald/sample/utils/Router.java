@@ -0,0 +1,93 @@
+package com.github.phoswald.sample.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Dispatches requests by method and path using a prefix tree that is built once from path templates.
+ * <p>
+ * Path templates consist of literal segments and variables like <code>/app/rest/tasks/{id}</code>. Literal
+ * segments take precedence over variables, so <code>/app/rest/tasks/search</code> and
+ * <code>/app/rest/tasks/{id}</code> can coexist.
+ */
+public class Router<T> {
+
+    private final Node<T> root = new Node<>();
+
+    public Router<T> add(String method, String pathTemplate, T target) {
+        Node<T> node = root;
+        for (String segment : splitTemplate(pathTemplate)) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (node.variable == null) {
+                    node.variable = new Node<>();
+                    node.variableName = name;
+                } else if (!Objects.equals(node.variableName, name)) {
+                    throw new IllegalArgumentException("Conflicting path variable {" + name + "} in " + pathTemplate);
+                }
+                node = node.variable;
+            } else {
+                node = node.literals.computeIfAbsent(segment, key -> new Node<>());
+            }
+        }
+        if (node.targets.putIfAbsent(method, target) != null) {
+            throw new IllegalArgumentException("Duplicate route " + method + " " + pathTemplate);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the target and path variables for the given request, or <code>null</code> if no route matches.
+     */
+    public Match<T> match(String method, String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        Map<String, String> variables = new HashMap<>(2);
+        T target = match(root, method, path, 1, variables);
+        return target == null ? null : new Match<>(target, variables);
+    }
+
+    private static <T> T match(Node<T> node, String method, String path, int start, Map<String, String> variables) {
+        if (start > path.length()) {
+            return node.targets.get(method);
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+        String segment = path.substring(start, end);
+        Node<T> literal = node.literals.get(segment);
+        if (literal != null) {
+            T target = match(literal, method, path, end + 1, variables);
+            if (target != null) {
+                return target;
+            }
+        }
+        if (node.variable != null && !segment.isEmpty()) {
+            T target = match(node.variable, method, path, end + 1, variables);
+            if (target != null) {
+                variables.put(node.variableName, segment);
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private static String[] splitTemplate(String pathTemplate) {
+        if (!pathTemplate.startsWith("/")) {
+            throw new IllegalArgumentException("Path template must start with '/': " + pathTemplate);
+        }
+        return pathTemplate.substring(1).split("/", -1);
+    }
+
+    public record Match<T>(T target, Map<String, String> variables) { }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> literals = new HashMap<>();
+        private final Map<String, T> targets = new HashMap<>();
+        private Node<T> variable;
+        private String variableName;
+    }
+}
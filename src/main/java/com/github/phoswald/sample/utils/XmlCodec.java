@@ -0,0 +1,112 @@
+package com.github.phoswald.sample.utils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+/**
+ * XML binding with one <code>JAXBContext</code> per class and pooled marshallers and unmarshallers, which are not
+ * thread-safe and therefore used by one thread at a time.
+ * <p>
+ * The format is the same as with <code>JAXB.marshal()</code> and <code>JAXB.unmarshal()</code>: formatted output, and
+ * classes without <code>@XmlRootElement</code> use their decapitalized simple name as root element.
+ */
+public class XmlCodec {
+
+    private static final int POOL_SIZE = 64;
+
+    private final Map<Class<?>, Binding> bindings = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the codec and the contexts of the given classes, so the first request does not pay for them. Other
+     * classes are bound when they are first used.
+     */
+    public XmlCodec(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            binding(clazz);
+        }
+    }
+
+    public void marshal(Object object, OutputStream stream) {
+        Binding binding = binding(object.getClass());
+        Marshaller marshaller = binding.marshallers.poll();
+        try {
+            if (marshaller == null) {
+                marshaller = binding.context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            }
+            marshaller.marshal(binding.wrap(object), stream);
+        } catch (JAXBException e) {
+            throw new DataBindingException("Cannot marshal " + object.getClass().getName(), e);
+        } finally {
+            if (marshaller != null) {
+                binding.marshallers.offer(marshaller);
+            }
+        }
+    }
+
+    public <T> T unmarshal(Class<T> clazz, InputStream stream) {
+        Binding binding = binding(clazz);
+        Unmarshaller unmarshaller = binding.unmarshallers.poll();
+        try {
+            if (unmarshaller == null) {
+                unmarshaller = binding.context.createUnmarshaller();
+            }
+            return unmarshaller.unmarshal(new StreamSource(stream), clazz).getValue();
+        } catch (JAXBException e) {
+            throw new DataBindingException("Cannot unmarshal " + clazz.getName(), e);
+        } finally {
+            if (unmarshaller != null) {
+                binding.unmarshallers.offer(unmarshaller);
+            }
+        }
+    }
+
+    private Binding binding(Class<?> clazz) {
+        Binding binding = bindings.get(clazz);
+        return binding != null ? binding : bindings.computeIfAbsent(clazz, Binding::new);
+    }
+
+    private static final class Binding {
+
+        private final JAXBContext context;
+        private final QName rootName;
+        private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        Binding(Class<?> clazz) {
+            try {
+                context = JAXBContext.newInstance(clazz);
+            } catch (JAXBException e) {
+                throw new DataBindingException("Cannot bind " + clazz.getName(), e);
+            }
+            rootName = clazz.isAnnotationPresent(XmlRootElement.class) ? null : new QName(decapitalize(clazz.getSimpleName()));
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Object wrap(Object object) {
+            return rootName == null ? object : new JAXBElement(rootName, object.getClass(), object);
+        }
+
+        private static String decapitalize(String name) {
+            if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+                return name;
+            }
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+}
@@ -2,13 +2,43 @@ package com.github.phoswald.sample;
 
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.matchesRegex;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -43,6 +73,36 @@ class ApplicationTest {
             body(startsWith("<!doctype html>"), containsString("<title>Jetty Sample Service</title>"));
     }
 
+    @Test
+    void getIndexPageCompressed() {
+        given().
+            header("Accept-Encoding", "gzip").
+        when().
+            get("/").
+        then().
+            statusCode(200).
+            header("Content-Encoding", "gzip").
+            body(startsWith("<!doctype html>"));
+    }
+
+    @Test
+    void getMetrics() {
+        when().
+            get("/app/rest/sample/time").
+        then().
+            statusCode(200);
+
+        when().
+            get("/app/metrics").
+        then().
+            statusCode(200).
+            contentType("text/plain; version=0.0.4; charset=utf-8").
+            body(containsString("app_http_requests_total{route=\"GET /app/rest/sample/time\",status=\"200\"} ")).
+            body(containsString("app_http_request_duration_seconds_bucket{route=\"GET /app/rest/sample/time\",le=\"+Inf\"} ")).
+            body(containsString("app_jetty_threads{state=\"busy\"} ")).
+            body(containsString("app_jdbc_pool_connections{state=\"active\"} "));
+    }
+
     @Test
     void getTime() {
         when().
@@ -52,6 +112,107 @@ class ApplicationTest {
             body(matchesRegex("[0-9]{4}-[0-9]{2}-[0-9]{2}T[0-9]{2}:[0-9]{2}:[0-9]{2}\\.[0-9]+(\\+|\\-)[0-9]{2}:[0-9]{2}\\[.+\\]"));
     }
 
+    @Test
+    void getTimeHttp2Cleartext() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:8080/app/rest/sample/time")).build();
+        for (int i = 0; i < 2; i++) { // the first request upgrades the connection, the second one reuses it
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+        }
+    }
+
+    @Test
+    void getHealth() {
+        when().
+            get("/app/health/live").
+        then().
+            statusCode(200).
+            body("status", equalTo("UP")).
+            body("database", equalTo("UP"));
+
+        when().
+            get("/app/health/ready").
+        then().
+            statusCode(200).
+            body("status", equalTo("UP")).
+            body("database", equalTo("UP"));
+    }
+
+    @Test
+    void getHealthPoolSaturated() throws Exception {
+        ApplicationModule saturatedModule = new TestModule(8084, 0, Map.of("app.jdbc.pool.max", "2"));
+        Application saturated = saturatedModule.getApplication();
+        saturated.start();
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                connections.add(saturatedModule.getDataSource().getConnection());
+            }
+            // still ready, and without waiting for a connection, which would time out and report the database as down
+            given().port(8084).when().get("/app/health/ready").then().statusCode(200).body("status", equalTo("UP"), "database", equalTo("UP"));
+
+            connections.get(0).close();
+            given().port(8084).when().get("/app/health/ready").then().statusCode(200).body("status", equalTo("UP"));
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            saturated.stop();
+            saturatedModule.close();
+        }
+    }
+
+    @Test
+    void stopGracefully() throws Exception {
+        ApplicationModule gracefulModule = new TestModule(8081, 10000);
+        Application graceful = gracefulModule.getApplication();
+        graceful.start();
+        try(Socket socket = new Socket("localhost", 8081)) {
+            OutputStream requestStream = socket.getOutputStream();
+            requestStream.write(("POST /app/rest/tasks/import HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Content-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            writeChunk(requestStream, "{\"title\":\"In-flight task 1\"}\n");
+            Thread.sleep(200);
+
+            CompletableFuture<Void> stopped = CompletableFuture.runAsync(() -> {
+                try {
+                    graceful.stop();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            // while shutting down, Jetty closes connections that are idle for a second, blank lines keep this one busy
+            for (int i = 0; i < 5 || gracefulModule.getHealthResource().getReady().status() != 503; i++) {
+                writeChunk(requestStream, "\n");
+                Thread.sleep(100);
+            }
+            assertFalse(stopped.isDone());
+
+            writeChunk(requestStream, "{\"title\":\"In-flight task 2\"}\n");
+            writeChunk(requestStream, "");
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"), response);
+            assertTrue(response.contains("{\"created\":2,\"rejected\":[],\"updated\":0}"), response);
+            stopped.get();
+        } finally {
+            gracefulModule.close();
+        }
+    }
+
+    @Test
+    void startFailing() throws Exception {
+        ApplicationModule failingModule = new TestModule(8083, 0, Map.of("app.jdbc.schema", "validate")); // no tables yet
+        Application failing = failingModule.getApplication();
+        try {
+            assertThrows(CompletionException.class, failing::start);
+            assertThrows(IOException.class, () -> new Socket("localhost", 8083).close());
+        } finally {
+            failingModule.close();
+        }
+    }
+
     @Test
     void getConfig() {
         when().
@@ -87,6 +248,41 @@ class ApplicationTest {
             body(equalTo("{\"output\":\"Received Test Input\"}"));
     }
 
+    @Test
+    void postEchoJsonCompressed() {
+        given().
+            header("Accept-Encoding", "gzip").
+            contentType("application/json").
+            body("{\"input\":\"" + "x".repeat(2000) + "\"}").
+        when().
+            post("/app/rest/sample/echo-json").
+        then().
+            statusCode(200).
+            header("Content-Encoding", "gzip").
+            body(equalTo("{\"output\":\"Received " + "x".repeat(2000) + "\"}"));
+
+        given().
+            header("Accept-Encoding", "gzip").
+            contentType("application/json").
+            body("{\"input\":\"Test Input\"}").
+        when().
+            post("/app/rest/sample/echo-json").
+        then().
+            statusCode(200).
+            header("Content-Encoding", nullValue());
+    }
+
+    @Test
+    void postEchoJsonTooLarge() {
+        given().
+            contentType("application/json").
+            body("{\"input\":\"" + "x".repeat(70000) + "\"}").
+        when().
+            post("/app/rest/sample/echo-json").
+        then().
+            statusCode(413);
+    }
+
     @Test
     void getSamplePage() {
         when().
@@ -140,7 +336,7 @@ class ApplicationTest {
             body("title", equalTo("Test title, updated"));
 
         when().
-            get("/app/rest/tasks/" + taskId.get()).
+            get("/app/rest/tasks/" + taskId.get() + "?id=other").
         then().
             statusCode(200).
             contentType("application/json").
@@ -168,7 +364,734 @@ class ApplicationTest {
             body(equalTo(""));
     }
 
+    @Test
+    void tasksPerUser() {
+        var request = new TaskEntity();
+        request.setTitle("Task of alice");
+        String taskId = given().
+            header("X-User-Id", "alice").
+            contentType("application/json").
+            body(request).
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("userId", equalTo("alice")).
+        extract().path("taskId");
+
+        given().
+            header("X-User-Id", "alice").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("taskId", contains(taskId));
+
+        given().
+            header("X-User-Id", "bob").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+
+        given().
+            header("X-User-Id", "bob").
+        when().
+            get("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(404);
+
+        given().
+            header("X-User-Id", "bob").
+        when().
+            delete("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(404);
+
+        when().
+            get("/app/pages/tasks/" + taskId).
+        then().
+            statusCode(404);
+
+        given().
+            header("X-User-Id", "not a user").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(400);
+
+        given().
+            header("X-User-Id", "alice").
+        when().
+            delete("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void rateLimitPerUser() throws Exception {
+        ApplicationModule limitedModule = new TestModule(8081, 0, Map.of("app.rate-limit.tasks.per-second", "0.001", "app.rate-limit.tasks.burst", "2"));
+        Application limited = limitedModule.getApplication();
+        limited.start();
+        try {
+            for (int i = 0; i < 2; i++) {
+                given().port(8081).header("X-User-Id", "alice").when().get("/app/rest/tasks").then().statusCode(200);
+            }
+            given().port(8081).header("X-User-Id", "alice").when().get("/app/rest/tasks").then().statusCode(429).header("Retry-After", "1");
+            given().port(8081).header("X-User-Id", "bob").when().get("/app/rest/tasks").then().statusCode(200);
+            given().port(8081).header("X-User-Id", "alice").when().get("/app/rest/sample/time").then().statusCode(200);
+        } finally {
+            limited.stop();
+            limitedModule.close();
+        }
+    }
+
+    @Test
+    void taskEvents() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create("http://localhost:8080/app/rest/tasks/events")).header("X-User-Id", "carol").build();
+        HttpResponse<Stream<String>> response = client.send(subscribe, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        assertEquals(Optional.of("text/event-stream;charset=utf-8"), response.headers().firstValue("Content-Type").map(value -> value.replace(" ", "")));
+
+        var request = new TaskEntity();
+        request.setTitle("Task with events");
+        String taskId = given().
+            header("X-User-Id", "carol").
+            contentType("application/json").
+            body(request).
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+        extract().path("taskId");
+
+        List<String> event;
+        try (Stream<String> lines = response.body()) {
+            event = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> nextEvent(lines.iterator()));
+        }
+        assertTrue(event.get(0).matches("id: \\d+"), event.get(0));
+        assertEquals("event: created", event.get(1));
+        assertTrue(event.get(2).contains("\"taskId\":\"" + taskId + "\""), event.get(2));
+
+        given().
+            header("X-User-Id", "carol").
+            contentType("application/json").
+            body("{\"done\":true}").
+        when().
+            patch("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(204);
+
+        given().
+            header("X-User-Id", "carol").
+        when().
+            delete("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200);
+
+        HttpRequest resume = HttpRequest.newBuilder(subscribe.uri()).header("X-User-Id", "carol").header("Last-Event-ID", event.get(0).substring(4)).build();
+        List<String> updated;
+        try (Stream<String> lines = client.send(resume, HttpResponse.BodyHandlers.ofLines()).body()) {
+            Iterator<String> iterator = lines.iterator();
+            updated = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> nextEvent(iterator));
+            event = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> nextEvent(iterator));
+        }
+        assertEquals("event: updated", updated.get(1));
+        assertTrue(updated.get(2).contains("\"title\":\"Task with events\""), updated.get(2)); // not just the patched property
+        assertTrue(updated.get(2).contains("\"done\":true"), updated.get(2));
+        assertTrue(updated.get(2).contains("\"version\":1"), updated.get(2));
+        assertEquals("event: deleted", event.get(1));
+        assertEquals("data: {\"taskId\":\"" + taskId + "\"}", event.get(2));
+    }
+
+    /**
+     * Reads the lines of the next event, skipping the pings.
+     */
+    private static List<String> nextEvent(Iterator<String> lines) {
+        List<String> event = new ArrayList<>();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.isEmpty() && !event.isEmpty()) {
+                return event;
+            } else if (!line.isEmpty() && !line.startsWith(":")) {
+                event.add(line);
+            }
+        }
+        return event;
+    }
+
+    @Test
+    void groupCommitTaskResource() throws Exception {
+        ApplicationModule groupModule = new TestModule(8082, 0, Map.of("app.jdbc.group-commit.max-delay", "5", "app.jdbc.group-commit.max-size", "8"));
+        Application grouped = groupModule.getApplication();
+        grouped.start();
+        try {
+            List<CompletableFuture<String>> taskIds = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String body = "{\"title\":\"Grouped task " + i + "\"}";
+                taskIds.add(CompletableFuture.supplyAsync(() -> given().port(8082).header("X-User-Id", "dave").contentType("application/json").body(body).
+                        when().post("/app/rest/tasks").then().statusCode(200).extract().<String>path("taskId")));
+            }
+            List<String> created = taskIds.stream().map(CompletableFuture::join).sorted().toList();
+
+            List<String> listed = given().port(8082).header("X-User-Id", "dave").when().get("/app/rest/tasks").then().statusCode(200).
+                    extract().<List<String>>path("taskId").stream().sorted().toList();
+            assertEquals(created, listed);
+
+            given().port(8082).contentType("application/json").body("{\"done\":true,\"title\":\"Grouped task, done\"}").
+                when().put("/app/rest/tasks/" + created.get(0)).then().statusCode(404);
+            given().port(8082).header("X-User-Id", "dave").contentType("application/json").body("{\"done\":true,\"title\":\"Grouped task, done\"}").
+                when().put("/app/rest/tasks/" + created.get(0)).then().statusCode(200).body("done", equalTo(true));
+
+            // the update of the missing task counts as well, as it took part in a transaction
+            given().port(8082).when().get("/app/metrics").then().statusCode(200).body(containsString("app_task_writes_total 22"));
+        } finally {
+            grouped.stop();
+            groupModule.close();
+        }
+    }
+
+    @Test
+    void conditionalTaskResource() {
+        var request = new TaskEntity();
+        request.setTitle("Conditional task");
+        String taskId = given().
+            contentType("application/json").
+            body(request).
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+        extract().path("taskId");
+
+        String etag = when().
+            get("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200).
+            header("ETag", matchesRegex("\"[0-9a-z]+\"")).
+        extract().header("ETag");
+
+        given().
+            header("If-None-Match", etag).
+        when().
+            get("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(304).
+            header("ETag", equalTo(etag)).
+            body(equalTo(""));
+
+        request.setTitle("Conditional task, updated");
+        given().
+            header("If-Match", "\"outdated\"").
+            contentType("application/json").
+            body(request).
+        when().
+            put("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(412).
+            header("ETag", equalTo(etag));
+
+        String newEtag = given().
+            header("If-Match", etag).
+            contentType("application/json").
+            body(request).
+        when().
+            put("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200).
+            header("ETag", not(equalTo(etag))).
+            body("title", equalTo("Conditional task, updated")).
+        extract().header("ETag");
+
+        given().
+            header("If-None-Match", newEtag).
+        when().
+            get("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(304);
+
+        String listEtag = given().
+            header("Accept-Encoding", "gzip").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+        extract().header("ETag");
+
+        given().
+            header("Accept-Encoding", "gzip").
+            header("If-None-Match", listEtag).
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(304);
+
+        String pageEtag = when().
+            get("/app/pages/tasks/" + taskId).
+        then().
+            statusCode(200).
+        extract().header("ETag");
+
+        given().
+            header("If-None-Match", pageEtag).
+        when().
+            get("/app/pages/tasks/" + taskId).
+        then().
+            statusCode(304);
+
+        when().
+            delete("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200);
+
+        given().
+            header("If-None-Match", listEtag).
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void versionedTaskResource() {
+        String taskId = given().
+            contentType("application/json").
+            body("{\"title\":\"Versioned task\"}").
+        when().
+            post("/app/rest/tasks").
+        then().
+            statusCode(200).
+            body("version", equalTo(0)).
+        extract().path("taskId");
+
+        given().
+            contentType("application/json").
+            body("{\"title\":\"Versioned task, updated\",\"version\":0}").
+        when().
+            put("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200).
+            body("version", equalTo(1));
+
+        given().
+            contentType("application/json").
+            body("{\"title\":\"Versioned task, overwritten\",\"version\":0}").
+        when().
+            put("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(409).
+            body("title", equalTo("Versioned task, updated"), "version", equalTo(1));
+
+        String etag = given().
+            contentType("application/json").
+            body("{\"done\":true}").
+        when().
+            patch("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(204).
+            header("ETag", matchesRegex("\"[0-9a-z]+\"")).
+        extract().header("ETag");
+
+        given().
+            header("If-None-Match", etag).
+        when().
+            get("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(304);
+
+        given().
+            header("If-Match", "\"outdated\"").
+            contentType("application/json").
+            body("{\"done\":false}").
+        when().
+            patch("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(412).
+            header("ETag", equalTo(etag));
+
+        given().
+            header("If-Match", etag).
+            contentType("application/json").
+            body("{\"description\":\"Patched\"}").
+        when().
+            patch("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200).
+            body("title", equalTo("Versioned task, updated"), "description", equalTo("Patched"), "done", equalTo(true), "version", equalTo(3));
+
+        given().
+            contentType("application/json").
+            body("{\"done\":true}").
+        when().
+            patch("/app/rest/tasks/unknown").
+        then().
+            statusCode(404);
+
+        given().
+            formParam("action", "store").
+            formParam("title", "Versioned task, stale form").
+            formParam("version", "2").
+        when().
+            post("/app/pages/tasks/" + taskId).
+        then().
+            statusCode(409);
+
+        when().
+            delete("/app/rest/tasks/" + taskId).
+        then().
+            statusCode(200);
+    }
+
+    @Test
+    void batchTaskResource() {
+        List<String> taskIds = given().
+            contentType("application/json").
+            body("[{\"title\":\"Batch task 1\"},{\"title\":\"Batch task 2\"},{\"title\":\"Batch task 3\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(3)).
+            body("status", everyItem(equalTo(201))).
+        extract().path("taskId");
+
+        given().
+            contentType("application/json").
+            body("[{\"taskId\":\"" + taskIds.get(0) + "\",\"title\":\"Batch task 1, updated\",\"done\":true},{\"taskId\":\"unknown\"},{},null]").
+        when().
+            put("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("taskId", contains(taskIds.get(0), "unknown", null, null)).
+            body("status", contains(200, 404, 400, 400));
+
+        when().
+            get("/app/rest/tasks/" + taskIds.get(0)).
+        then().
+            statusCode(200).
+            body("title", equalTo("Batch task 1, updated")).
+            body("done", equalTo(true));
+
+        given().
+            contentType("application/json").
+            body("[\"" + String.join("\",\"", taskIds) + "\",\"unknown\"]").
+        when().
+            delete("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("status", contains(200, 200, 200, 404));
+
+        when().
+            get("/app/rest/tasks/" + taskIds.get(0)).
+        then().
+            statusCode(404);
+
+        given().
+            header("X-User-Id", "batch").
+            contentType("application/json").
+            body("[null,{\"title\":\"Batch task 4\"}]").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("status", contains(400, 201));
+
+        given().
+            contentType("application/json").
+            body("[{\"title\":").
+        when().
+            post("/app/rest/tasks/batch").
+        then().
+            statusCode(400);
+    }
+
+    @Test
+    void importExportTasks() {
+        String tasks = """
+                {"taskId":"00000000000000000000000000000001","userId":"alice","timestamp":"2024-01-01T00:00:00Z","title":"Imported task 1","done":false}
+                {"title":"Imported task 2","done":true}
+
+                """;
+        given().
+            contentType("application/x-ndjson").
+            body(tasks.getBytes(StandardCharsets.UTF_8)).
+        when().
+            post("/app/rest/tasks/import").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("created", equalTo(2)).
+            body("updated", equalTo(0));
+
+        given().
+            contentType("application/x-ndjson").
+            body("{\"taskId\":\"00000000000000000000000000000001\",\"timestamp\":\"2024-01-01T00:00:00Z\",\"title\":\"Imported task 1, updated\"}\n".getBytes(StandardCharsets.UTF_8)).
+        when().
+            post("/app/rest/tasks/import").
+        then().
+            statusCode(200).
+            body("created", equalTo(0)).
+            body("updated", equalTo(1));
+
+        given().
+            header("X-User-Id", "bob").
+            contentType("application/x-ndjson").
+            body("{\"taskId\":\"00000000000000000000000000000001\",\"title\":\"Not my task\"}\n".getBytes(StandardCharsets.UTF_8)).
+        when().
+            post("/app/rest/tasks/import").
+        then().
+            statusCode(200).
+            body("created", equalTo(0)).
+            body("updated", equalTo(0)).
+            body("rejected.taskId", equalTo(List.of("00000000000000000000000000000001"))).
+            body("rejected.status", equalTo(List.of(409)));
+
+        given().
+            header("X-User-Id", "bob").
+            contentType("application/x-ndjson").
+            body("{\"title\":\"Valid\"}\n\n{\"title\":\n".getBytes(StandardCharsets.UTF_8)).
+        when().
+            post("/app/rest/tasks/import").
+        then().
+            statusCode(400).
+            body(containsString("line 3"));
+
+        given().
+            header("X-User-Id", "bob").
+            contentType("application/x-ndjson").
+            body("null\n".getBytes(StandardCharsets.UTF_8)).
+        when().
+            post("/app/rest/tasks/import").
+        then().
+            statusCode(400).
+            body(containsString("line 1"));
+
+        List<String> lines = when().
+            get("/app/rest/tasks/export").
+        then().
+            statusCode(200).
+            contentType("application/x-ndjson").
+        extract().asString().lines().toList();
+
+        List<String> taskIds = new ArrayList<>();
+        for (String line : lines) {
+            if (line.contains("\"title\":\"Imported task ")) {
+                taskIds.add(line.replaceAll(".*\"taskId\":\"([0-9a-f]+)\".*", "$1"));
+            }
+        }
+        assertEquals(2, taskIds.size());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("\"title\":\"Imported task 1, updated\"")
+                && !line.contains("\"timestamp\":\"2024-01-01T00:00:00Z\"")));
+
+        given().
+            contentType("application/json").
+            body("[\"" + String.join("\",\"", taskIds) + "\"]").
+        when().
+            delete("/app/rest/tasks/batch").
+        then().
+            statusCode(200).
+            body("status", everyItem(equalTo(200)));
+    }
+
+    @Test
+    void getTasksPaged() {
+        var taskIds = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            var request = new TaskEntity();
+            request.setTitle("Paged task " + i);
+            taskIds.add(given().
+                contentType("application/json").
+                body(request).
+            when().
+                post("/app/rest/tasks").
+            then().
+                statusCode(200).
+            extract().path("taskId"));
+        }
+
+        var page1 = when().
+            get("/app/rest/tasks?limit=2").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(2)).
+        extract().jsonPath();
+
+        given().
+            queryParam("after", page1.getString("[1].timestamp") + "_" + page1.getString("[1].taskId")).
+            queryParam("limit", "2").
+        when().
+            get("/app/rest/tasks").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("$.size()", equalTo(1)).
+            body("[0].title", equalTo("Paged task 0"));
+
+        when().
+            get("/app/rest/tasks?after=invalid").
+        then().
+            statusCode(400);
+
+        when().
+            get("/app/rest/tasks?limit=0").
+        then().
+            statusCode(400);
+
+        taskIds.forEach(taskId -> when().delete("/app/rest/tasks/" + taskId).then().statusCode(200));
+    }
+
+    @Test
+    void searchTasks() {
+        String word = "word" + UUID.randomUUID().toString().replace("-", "");
+        Instant before = Instant.now();
+        var taskIds = new ArrayList<String>();
+        for (String title : List.of("Water the plants", "Buy plants", "Call the plumber")) {
+            var request = new TaskEntity();
+            request.setTitle(title);
+            request.setDescription("Search test " + word);
+            request.setDone(title.startsWith("Buy"));
+            taskIds.add(given().
+                contentType("application/json").
+                body(request).
+            when().
+                post("/app/rest/tasks").
+            then().
+                statusCode(200).
+            extract().path("taskId"));
+        }
+
+        given().
+            queryParam("q", "PLANTS " + word).
+        when().
+            get("/app/rest/tasks/search").
+        then().
+            statusCode(200).
+            contentType("application/json").
+            body("title", contains("Buy plants", "Water the plants"));
+
+        given().
+            queryParam("q", word).
+            queryParam("done", "false").
+            queryParam("from", before.toString()).
+        when().
+            get("/app/rest/tasks/search").
+        then().
+            statusCode(200).
+            body("title", contains("Call the plumber", "Water the plants"));
+
+        given().
+            queryParam("q", word).
+            queryParam("to", before.toString()).
+        when().
+            get("/app/rest/tasks/search").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+
+        given().
+            queryParam("q", "plants " + word).
+        when().
+            get("/app/pages/tasks").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("<td>Water the plants</td>"),
+                not(containsString("<td>Call the plumber</td>")));
+
+        when().
+            get("/app/rest/tasks/search?done=maybe").
+        then().
+            statusCode(400);
+
+        taskIds.forEach(taskId -> when().delete("/app/rest/tasks/" + taskId).then().statusCode(200));
+
+        given().
+            queryParam("q", word).
+        when().
+            get("/app/rest/tasks/search").
+        then().
+            statusCode(200).
+            body("$.size()", equalTo(0));
+    }
+
+    @Test
+    void crudTaskPages() {
+        String page = given().
+            formParam("title", "Test title from form").
+        when().
+            post("/app/pages/tasks").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("<title>Tasks Overview</title>"),
+                containsString("<td>Test title from form</td>")).
+        extract().asString();
+
+        Matcher matcher = Pattern.compile("href=\"tasks/([0-9a-f]{32})\"").matcher(page);
+        assertTrue(matcher.find());
+        String taskId = matcher.group(1);
+
+        when().
+            get("/app/pages/tasks/" + taskId + "?action=edit").
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("<title>Edit Task Details</title>"));
+
+        given().
+            formParam("action", "delete").
+        when().
+            post("/app/pages/tasks/" + taskId).
+        then().
+            statusCode(200).
+            contentType("text/html").
+            body(containsString("<title>Tasks Overview</title>"),
+                not(containsString(taskId)));
+    }
+
+    @Test
+    void postTaskPageNonAscii() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:8080/app/pages/tasks")).
+                header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8").
+                POST(HttpRequest.BodyPublishers.ofString("title=Grüße vom Bodensee", StandardCharsets.UTF_8)).build(); // not encoded, as some clients send it
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("<td>Grüße vom Bodensee</td>"), response.body());
+    }
+
+    private static void writeChunk(OutputStream stream, String chunk) throws IOException {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        stream.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        stream.write(bytes);
+        stream.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        stream.flush();
+    }
+
     private static class TestModule extends ApplicationModule {
+
+        private final int port;
+        private final int shutdownTimeout;
+        private final Map<String, String> properties;
+
+        TestModule() {
+            this(8080, 0); // idle keep-alive connections would delay every stop
+        }
+
+        TestModule(int port, int shutdownTimeout) {
+            this(port, shutdownTimeout, Map.of());
+        }
+
+        TestModule(int port, int shutdownTimeout, Map<String, String> properties) {
+            this.port = port;
+            this.shutdownTimeout = shutdownTimeout;
+            this.properties = properties;
+        }
+
         @Override
         public ConfigProvider getConfigProvider() {
             return new ConfigProvider() {
@@ -176,7 +1099,10 @@ class ApplicationTest {
                 public Optional<String> getConfigProperty(String name) {
                     return switch(name) {
                         case "app.sample.config" -> Optional.of("Test Config Value");
-                        default -> super.getConfigProperty(name);
+                        case "app.http.max-body-size" -> Optional.of("65536");
+                        case "app.http.port" -> Optional.of(Integer.toString(port));
+                        case "app.shutdown.timeout" -> Optional.of(Integer.toString(shutdownTimeout));
+                        default -> properties.containsKey(name) ? Optional.of(properties.get(name)) : super.getConfigProperty(name);
                     };
                 }
             };
@@ -0,0 +1,91 @@
+package com.github.phoswald.sample;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
+import com.github.phoswald.sample.task.TaskEntity;
+
+/**
+ * Serializes and deserializes single request and response bodies as the handlers do, in JSON and XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private final EchoResponse echoResponse = new EchoResponse();
+    private final TaskEntity task = new TaskEntity();
+    private byte[] echoRequestJson;
+    private byte[] echoRequestXml;
+    private byte[] taskJson;
+
+    @Setup
+    public void setup() {
+        echoResponse.setOutput("Received This is a benchmark");
+        task.setNewTaskId();
+        task.setUserId("guest");
+        task.setTimestamp(Instant.now());
+        task.setTitle("Some task");
+        task.setDescription("Description of some task");
+        echoRequestJson = "{\"input\":\"This is a benchmark\"}".getBytes();
+        echoRequestXml = "<echoRequest><input>This is a benchmark</input></echoRequest>".getBytes();
+        taskJson = serialize(false, task);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return serialize(false, echoResponse);
+    }
+
+    @Benchmark
+    public EchoRequest deserializeJson() {
+        return Application.deserializeJson(EchoRequest.class, echoRequestJson);
+    }
+
+    @Benchmark
+    public byte[] serializeTaskJson() {
+        return serialize(false, task);
+    }
+
+    @Benchmark
+    public TaskEntity deserializeTaskJson() {
+        return Application.deserializeJson(TaskEntity.class, taskJson);
+    }
+
+    @Benchmark
+    public byte[] serializeXml() {
+        return serialize(true, echoResponse);
+    }
+
+    @Benchmark
+    public EchoRequest deserializeXml() {
+        return Application.deserializeXml(EchoRequest.class, echoRequestXml);
+    }
+
+    private static byte[] serialize(boolean xml, Object object) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if (xml) {
+            Application.serializeXml(object, stream);
+        } else {
+            Application.serializeJson(object, stream);
+        }
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.phoswald.sample;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.xml.bind.JAXB;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+/**
+ * Throughput of <code>/app/rest/sample/echo-xml</code> over HTTP, and of the request and response binding alone,
+ * with the <code>JAXB</code> convenience API (as before) and with the cached contexts and pooled marshallers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoXmlBenchmark {
+
+    private static final byte[] REQUEST = "<echoRequest><input>This is a benchmark</input></echoRequest>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final Application application = new BenchmarkModule().getApplication();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:18080/app/rest/sample/echo-xml"))
+            .header("content-type", "text/xml")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(REQUEST))
+            .build();
+    private final EchoResponse response = new EchoResponse();
+
+    @Setup
+    public void setup() throws Exception {
+        application.start();
+        response.setOutput("Received This is a benchmark");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        application.stop();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] http() throws IOException, InterruptedException {
+        HttpResponse<byte[]> result = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (result.statusCode() != 200) {
+            throw new IllegalStateException("Status " + result.statusCode());
+        }
+        return result.body();
+    }
+
+    @Benchmark
+    public byte[] bindingConvenience() {
+        EchoRequest echoRequest = JAXB.unmarshal(new ByteArrayInputStream(REQUEST), EchoRequest.class);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JAXB.marshal(response, stream);
+        return echoRequest.getInput() == null ? null : stream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] bindingPooled() {
+        EchoRequest echoRequest = Application.deserializeXml(EchoRequest.class, REQUEST);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Application.serializeXml(response, stream);
+        return echoRequest.getInput() == null ? null : stream.toByteArray();
+    }
+
+    private static class BenchmarkModule extends ApplicationModule {
+        @Override
+        public ConfigProvider getConfigProvider() {
+            return new ConfigProvider() {
+                @Override
+                public Optional<String> getConfigProperty(String name) {
+                    return name.equals("app.http.port") ? Optional.of("18080") : super.getConfigProperty(name);
+                }
+            };
+        }
+    }
+}
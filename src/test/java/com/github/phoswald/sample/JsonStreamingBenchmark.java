@@ -0,0 +1,70 @@
+package com.github.phoswald.sample;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.task.TaskEntity;
+
+/**
+ * Compares serializing a task list into a <code>String</code> and <code>byte[]</code> with streaming it element by
+ * element. Run with <code>-prof gc</code> to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class JsonStreamingBenchmark {
+
+    private static final Jsonb json = JsonbBuilder.create();
+
+    @Param({ "100", "10000", "1000000" })
+    public int count;
+
+    private List<TaskEntity> tasks;
+
+    @Setup
+    public void setup() {
+        tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TaskEntity task = new TaskEntity();
+            task.setNewTaskId();
+            task.setUserId("guest");
+            task.setTimestamp(Instant.now());
+            task.setTitle("Task " + i);
+            task.setDescription("Description of task " + i);
+            task.setDone(i % 2 == 0);
+            tasks.add(task);
+        }
+    }
+
+    @Benchmark
+    public byte[] buffered() {
+        return json.toJson(tasks).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void streamed() {
+        Application.serializeJsonArray(tasks.stream(), OutputStream.nullOutputStream());
+    }
+}
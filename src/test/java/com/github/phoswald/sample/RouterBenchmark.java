@@ -0,0 +1,85 @@
+package com.github.phoswald.sample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.utils.Router;
+
+/**
+ * Compares the prefix tree router with the former sequence of regex handlers, using the route table of the
+ * application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({ "GET /app/rest/sample/time", "GET /app/rest/tasks/5b89f266c5664d1f8545451bc443cf26",
+            "POST /app/pages/tasks/5b89f266c5664d1f8545451bc443cf26", "GET /resources/missing" })
+    public String request;
+
+    private String method;
+    private String path;
+    private Router<String> router;
+    private List<LegacyRoute> sequence;
+
+    @Setup
+    public void setup() {
+        method = request.substring(0, request.indexOf(' '));
+        path = request.substring(request.indexOf(' ') + 1);
+        router = new Router<>();
+        sequence = new ArrayList<>();
+        ApplicationModule module = new ApplicationModule();
+        try {
+            for (Application.Route route : module.getApplication().createRoutes()) {
+                router.add(route.method(), route.path(), route.path());
+                sequence.add(new LegacyRoute(route.method(), route.path(),
+                        Pattern.compile("^" + route.path().replaceAll("\\{[^}]+\\}", "([0-9a-z-]+)") + "$")));
+            }
+        } finally {
+            module.close();
+        }
+    }
+
+    @Benchmark
+    public Object router() {
+        return router.match(method, path);
+    }
+
+    @Benchmark
+    public Object regexSequence() {
+        for (LegacyRoute route : sequence) {
+            Matcher matcher = route.pattern().matcher(path);
+            if (matcher.matches() && route.method().equals(method)) {
+                Map<String, String> params = new HashMap<>();
+                for (int i = 1; i <= matcher.groupCount(); i++) {
+                    params.put("" + i, matcher.group(i));
+                }
+                return params;
+            }
+        }
+        return null;
+    }
+
+    private record LegacyRoute(String method, String path, Pattern pattern) { }
+}
@@ -0,0 +1,84 @@
+package com.github.phoswald.sample;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.Json;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.json.stream.JsonGenerator;
+
+import org.eclipse.yasson.YassonJsonb;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.task.TaskEntity;
+
+/**
+ * Serializes a page of 100 tasks as the task list endpoint does, and deserializes a single task, with the reflective
+ * Yasson binding (as before) and with the serializers registered by the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskJsonBenchmark {
+
+    private static final YassonJsonb reflective = (YassonJsonb) JsonbBuilder.create();
+
+    private final List<TaskEntity> tasks = new ArrayList<>();
+    private byte[] taskJson;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < 100; i++) {
+            TaskEntity task = new TaskEntity();
+            task.setNewTaskId();
+            task.setUserId("guest");
+            task.setTimestamp(Instant.now());
+            task.setTitle("Task " + i);
+            task.setDescription("Description of task " + i);
+            task.setDone(i % 2 == 0);
+            tasks.add(task);
+        }
+        taskJson = reflective.toJson(tasks.get(0)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void serializeListReflective() {
+        try(JsonGenerator generator = Json.createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            tasks.forEach(task -> reflective.toJson(task, generator));
+            generator.writeEnd();
+        }
+    }
+
+    @Benchmark
+    public void serializeListPrecomputed() {
+        Application.serializeJsonArray(tasks.stream(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public TaskEntity deserializeReflective() {
+        return reflective.fromJson(new ByteArrayInputStream(taskJson), TaskEntity.class);
+    }
+
+    @Benchmark
+    public TaskEntity deserializePrecomputed() {
+        return Application.deserializeJson(TaskEntity.class, taskJson);
+    }
+}
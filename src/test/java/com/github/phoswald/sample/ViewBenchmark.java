@@ -0,0 +1,87 @@
+package com.github.phoswald.sample;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.sample.SampleView;
+import com.github.phoswald.sample.sample.SampleViewModel;
+import com.github.phoswald.sample.task.TaskCursor;
+import com.github.phoswald.sample.task.TaskEditView;
+import com.github.phoswald.sample.task.TaskEntity;
+import com.github.phoswald.sample.task.TaskListView;
+import com.github.phoswald.sample.task.TaskListViewModel;
+import com.github.phoswald.sample.task.TaskView;
+import com.github.phoswald.sample.task.TaskViewModel;
+import com.github.phoswald.sample.utils.HtmlPage;
+
+/**
+ * Renders every view with cached templates and streams the page through an encoder, as the page handlers do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewBenchmark {
+
+    @Param({ "sample", "task-list", "task", "task-edit" })
+    public String view;
+
+    private Supplier<HtmlPage> page;
+
+    @Setup
+    public void setup() {
+        List<TaskEntity> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TaskEntity task = new TaskEntity();
+            task.setNewTaskId();
+            task.setTimestamp(Instant.now());
+            task.setTitle("Task " + i);
+            task.setDescription("Description of task " + i);
+            tasks.add(task);
+        }
+        TaskViewModel task = new TaskViewModel(tasks.get(0));
+        page = switch (view) {
+            case "sample" -> {
+                SampleViewModel model = new SampleViewModel("benchmark");
+                yield () -> new SampleView().render(model);
+            }
+            case "task-list" -> {
+                TaskListViewModel model = new TaskListViewModel(TaskViewModel.newList(tasks), TaskCursor.of(tasks.get(99)), null);
+                yield () -> new TaskListView().render(model);
+            }
+            case "task" -> () -> new TaskView().render(task);
+            case "task-edit" -> () -> new TaskEditView().render(task);
+            default -> throw new IllegalArgumentException(view);
+        };
+    }
+
+    @Benchmark
+    public void render() throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8));
+        page.get().writeTo(writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.phoswald.sample.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class TaskCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final TaskCache testee = new TaskCache(2, 2, Duration.ofNanos(100), clock::get);
+
+    @Test
+    void getHitAndMiss() {
+        TaskEntity task = load("a");
+        assertSame(task, testee.get("guest", "a", this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, testee.hits());
+        assertEquals(1, testee.misses());
+    }
+
+    @Test
+    void getExpired() {
+        load("a");
+        clock.set(100);
+        load("a");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getEvictsLeastRecentlyUsed() {
+        load("a");
+        load("b");
+        testee.get("guest", "a", this::load);
+        load("c"); // evicts b
+        assertEquals(2, testee.size());
+        assertEquals(1, testee.evictions());
+        testee.get("guest", "a", this::load);
+        testee.get("guest", "b", this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void getMissingNotCached() {
+        assertNull(testee.get("guest", "a", key -> null));
+        assertEquals(0, testee.size());
+    }
+
+    @Test
+    void invalidate() {
+        load("a");
+        testee.invalidate("a");
+        load("a");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateDuringLoad() {
+        testee.get("guest", "a", key -> {
+            testee.invalidate(key); // a writer commits while the old state is being loaded
+            return new TaskEntity();
+        });
+        assertEquals(0, testee.size());
+    }
+
+    @Test
+    void getOtherUser() {
+        load("a");
+        assertNull(testee.get("other", "a", this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, testee.size());
+    }
+
+    @Test
+    void getEvictsLeastRecentlyUsedOfUser() {
+        TaskCache testee = new TaskCache(3, 2, Duration.ofNanos(100), clock::get);
+        testee.get("small", "a", key -> new TaskEntity());
+        testee.get("large", "b", key -> new TaskEntity());
+        testee.get("large", "c", key -> new TaskEntity());
+        testee.get("large", "d", key -> new TaskEntity()); // evicts b, not the older a of the other user
+        assertEquals(3, testee.size());
+        assertEquals(1, testee.evictions());
+        assertNotNull(testee.get("small", "a", key -> null)); // still cached
+        assertNull(testee.get("large", "b", key -> null)); // evicted, so loaded again
+    }
+
+    @Test
+    void getVersion() {
+        TaskListVersion version = new TaskListVersion(1, Instant.EPOCH);
+        assertSame(version, testee.getVersion("guest", key -> version));
+        assertSame(version, testee.getVersion("guest", key -> null)); // cached
+        testee.invalidateVersion("guest");
+        assertNull(testee.getVersion("guest", key -> null));
+    }
+
+    @Test
+    void invalidateVersionDuringLoad() {
+        testee.getVersion("guest", key -> {
+            testee.invalidateVersion(key); // a writer commits while the old version is being loaded
+            return new TaskListVersion(0, null);
+        });
+        TaskListVersion version = new TaskListVersion(1, Instant.EPOCH);
+        assertSame(version, testee.getVersion("guest", key -> version));
+    }
+
+    private TaskEntity load(String taskId) {
+        return load("guest", taskId);
+    }
+
+    private TaskEntity load(String userId, String taskId) {
+        return testee.get(userId, taskId, key -> {
+            loads.incrementAndGet();
+            return new TaskEntity();
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.phoswald.sample.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.util.List;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.json.bind.JsonbConfig;
+import jakarta.json.bind.JsonbException;
+
+import org.junit.jupiter.api.Test;
+
+class TaskEntityJsonTest {
+
+    private static final Jsonb reflective = JsonbBuilder.create();
+    private static final Jsonb testee = JsonbBuilder.create(new JsonbConfig() //
+            .withSerializers(new TaskEntityJson.Serializer()) //
+            .withDeserializers(new TaskEntityJson.Deserializer()));
+
+    @Test
+    void serializeLikeReflective() {
+        TaskEntity task = new TaskEntity();
+        assertEquals(reflective.toJson(task), testee.toJson(task));
+
+        task.setNewTaskId();
+        task.setUserId("guest");
+        task.setTimestamp(Instant.parse("2024-05-01T12:34:56.789123Z"));
+        task.setTitle("Title with \"quotes\", \\ and é\n");
+        task.setDescription("Description");
+        task.setDone(true);
+        task.setVersion(3L);
+        assertEquals(reflective.toJson(task), testee.toJson(task));
+        assertEquals(reflective.toJson(List.of(task, task)), testee.toJson(List.of(task, task)));
+
+        task.setTimestamp(Instant.parse("2024-05-01T12:34:56Z"));
+        assertEquals(reflective.toJson(task), testee.toJson(task));
+    }
+
+    @Test
+    void deserialize() {
+        TaskEntity task = testee.fromJson("""
+                {"taskId":"5b89f266c5664d1f8545451bc443cf26","userId":"guest","timestamp":"2024-05-01T12:34:56+02:00",
+                 "title":"Title","description":null,"done":true,"version":3,"unknown":{"nested":[1,{"a":2}]},"other":[3]}
+                """, TaskEntity.class);
+        assertEquals("5b89f266c5664d1f8545451bc443cf26", task.getTaskId());
+        assertEquals("guest", task.getUserId());
+        assertEquals(Instant.parse("2024-05-01T10:34:56Z"), task.getTimestamp());
+        assertEquals("Title", task.getTitle());
+        assertNull(task.getDescription());
+        assertEquals(true, task.isDone());
+        assertEquals(3L, task.getVersion());
+    }
+
+    @Test
+    void deserializeArray() {
+        TaskEntity[] tasks = testee.fromJson("[{\"title\":\"First\"},{\"title\":\"Second\",\"done\":false}]", TaskEntity[].class);
+        assertEquals(2, tasks.length);
+        assertEquals("First", tasks[0].getTitle());
+        assertEquals("Second", tasks[1].getTitle());
+        assertFalse(tasks[1].isDone());
+    }
+
+    @Test
+    void deserializeNull() {
+        assertNull(testee.fromJson("null", TaskEntity.class));
+        TaskEntity[] tasks = testee.fromJson("[{\"title\":\"First\"},null]", TaskEntity[].class);
+        assertEquals(2, tasks.length);
+        assertNull(tasks[1]);
+    }
+
+    @Test
+    void deserializeInvalid() {
+        assertThrows(JsonbException.class, () -> testee.fromJson("[\"First\"]", TaskEntity[].class));
+        assertThrows(JsonbException.class, () -> testee.fromJson("{\"timestamp\":\"yesterday\"}", TaskEntity.class));
+        assertThrows(JsonbException.class, () -> testee.fromJson("{\"version\":\"3\"}", TaskEntity.class));
+    }
+}
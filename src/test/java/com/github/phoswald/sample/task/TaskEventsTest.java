@@ -0,0 +1,98 @@
+package com.github.phoswald.sample.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TaskEventsTest {
+
+    private final TaskEvents testee = new TaskEvents(3, data -> data instanceof TaskEntity task ? "task " + task.getTaskId() : data.toString());
+
+    @Test
+    void subscribe() {
+        List<TaskEvent> received = new ArrayList<>();
+        Runnable unsubscribe = testee.subscribe("alice", null, received::add);
+        testee.created(task("1", "alice"));
+        testee.created(task("2", "bob"));
+        testee.deleted("alice", "1");
+        unsubscribe.run();
+        testee.created(task("3", "alice"));
+
+        assertEquals(List.of(TaskEvent.CREATED, TaskEvent.DELETED), received.stream().map(TaskEvent::type).toList());
+        assertEquals("task 1", received.get(0).data());
+        assertEquals("{taskId=1}", received.get(1).data());
+        assertEquals(received.get(0).id() + 2, received.get(1).id());
+    }
+
+    @Test
+    void subscribeAfterLastEvent() {
+        List<TaskEvent> received = new ArrayList<>();
+        testee.subscribe("alice", null, received::add);
+        testee.created(task("1", "alice"));
+        long lastEventId = received.get(0).id();
+        testee.updated(task("1", "alice"));
+        testee.created(task("2", "bob"));
+
+        List<TaskEvent> resumed = new ArrayList<>();
+        testee.subscribe("alice", lastEventId, resumed::add);
+        testee.deleted("alice", "1");
+
+        assertEquals(List.of(TaskEvent.UPDATED, TaskEvent.DELETED), resumed.stream().map(TaskEvent::type).toList());
+        assertEquals(received.subList(1, 3), resumed);
+    }
+
+    @Test
+    void subscribeAfterCurrentEvent() {
+        List<TaskEvent> received = new ArrayList<>();
+        testee.subscribe("alice", null, received::add);
+        testee.created(task("1", "alice"));
+
+        List<TaskEvent> resumed = new ArrayList<>();
+        testee.subscribe("alice", received.get(0).id(), resumed::add);
+
+        assertEquals(List.of(), resumed);
+    }
+
+    @Test
+    void subscribeAfterLostEvents() {
+        List<TaskEvent> received = new ArrayList<>();
+        testee.subscribe("alice", null, received::add);
+        testee.created(task("1", "alice"));
+        long lastEventId = received.get(0).id();
+        for (int i = 0; i < 4; i++) {
+            testee.updated(task("1", "alice"));
+        }
+
+        List<TaskEvent> resumed = new ArrayList<>();
+        testee.subscribe("alice", lastEventId, resumed::add);
+
+        assertEquals(1, resumed.size());
+        assertEquals(TaskEvent.RESET, resumed.get(0).type());
+        assertEquals(received.get(4).id(), resumed.get(0).id());
+        assertNull(resumed.get(0).data());
+    }
+
+    @Test
+    void subscribeAfterUnknownEvent() {
+        testee.created(task("1", "alice"));
+
+        List<TaskEvent> older = new ArrayList<>();
+        testee.subscribe("alice", 1L, older::add);
+        List<TaskEvent> newer = new ArrayList<>();
+        testee.subscribe("alice", Long.MAX_VALUE, newer::add);
+
+        assertEquals(List.of(TaskEvent.RESET), older.stream().map(TaskEvent::type).toList());
+        assertEquals(List.of(TaskEvent.RESET), newer.stream().map(TaskEvent::type).toList());
+    }
+
+    private static TaskEntity task(String taskId, String userId) {
+        TaskEntity task = new TaskEntity();
+        task.setTaskId(taskId);
+        task.setUserId(userId);
+        return task;
+    }
+}
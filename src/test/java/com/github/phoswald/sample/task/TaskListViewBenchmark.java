@@ -0,0 +1,78 @@
+package com.github.phoswald.sample.task;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.utils.AbstractView;
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+/**
+ * Renders the task list page with 100 tasks, with and without template caching, either into a string that is then
+ * encoded (as before) or streamed through an encoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskListViewBenchmark {
+
+    @Param({ "true", "false" })
+    public String cache;
+
+    private final TaskListView view = new TaskListView();
+    private TaskListViewModel model;
+
+    @Setup
+    public void setup() {
+        AbstractView.configure(new ConfigProvider() {
+            @Override
+            public Optional<String> getConfigProperty(String name) {
+                return name.equals("app.templates.cache") ? Optional.of(cache) : Optional.empty();
+            }
+        });
+        List<TaskEntity> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TaskEntity task = new TaskEntity();
+            task.setNewTaskId();
+            task.setTimestamp(Instant.now());
+            task.setTitle("Task " + i);
+            tasks.add(task);
+        }
+        model = new TaskListViewModel(TaskViewModel.newList(tasks), TaskCursor.of(tasks.get(99)), null);
+    }
+
+    @Benchmark
+    public byte[] renderToString() {
+        return view.render(model).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void renderToStream() throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(OutputStream.nullOutputStream(), StandardCharsets.UTF_8));
+        view.render(model).writeTo(writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.ApplicationModule;
+
+/**
+ * Runs the repository operations of the handlers against in-memory H2 with 1000 tasks. Every operation is a
+ * transaction of its own, including acquiring a pooled connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskRepositoryBenchmark {
+
+    private final ApplicationModule module = new ApplicationModule();
+    private String taskId;
+
+    @Setup
+    public void setup() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            for (int i = 0; i < 1000; i++) {
+                TaskEntity task = newTask(i);
+                repository.createTask(task);
+                taskId = task.getTaskId();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        module.getEntityManagerFactory().close();
+    }
+
+    @Benchmark
+    public TaskEntity create() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            TaskEntity task = newTask(0);
+            repository.createTask(task);
+            repository.updateChanges();
+            repository.setRollbackOnly();
+            return task;
+        }
+    }
+
+    @Benchmark
+    public TaskEntity selectById() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            return repository.selectTaskById("guest", taskId);
+        }
+    }
+
+    @Benchmark
+    public List<TaskEntity> selectPage() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            return repository.selectTasks("guest", null, 100);
+        }
+    }
+
+    @Benchmark
+    public TaskEntity update() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            TaskEntity task = repository.selectTaskById("guest", taskId);
+            task.setTimestamp(Instant.now());
+            task.setDone(!task.isDone());
+            return task;
+        }
+    }
+
+    @Benchmark
+    public void createAndDelete() {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            TaskEntity task = newTask(0);
+            repository.createTask(task);
+            repository.updateChanges();
+            repository.deleteTask(task);
+        }
+    }
+
+    private static TaskEntity newTask(int i) {
+        TaskEntity task = new TaskEntity();
+        task.setNewTaskId();
+        task.setUserId("guest");
+        task.setTimestamp(Instant.now());
+        task.setTitle("Task " + i);
+        task.setDescription("Description of task " + i);
+        return task;
+    }
+}
@@ -1,12 +1,32 @@
 package com.github.phoswald.sample.task;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
+import org.eclipse.jetty.http.HttpException;
 import org.junit.jupiter.api.Test;
 
 import com.github.phoswald.sample.ApplicationModule;
+import com.github.phoswald.sample.utils.ConfigProvider;
+import com.github.phoswald.sample.utils.PoolMetrics;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceException;
 
 class TaskRepositoryTest {
 
@@ -15,21 +35,307 @@ class TaskRepositoryTest {
     @Test
     void testCrud() {
         try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
-            assertEquals(0, testee.selectAllTasks().size());
+            assertEquals(0, testee.selectAllTasks("guest").size());
 
             TaskEntity entity = new TaskEntity();
             entity.setNewTaskId();
+            entity.setUserId("guest");
             entity.setTitle("Test Title");
             entity.setDescription("Test Description");
             testee.createTask(entity);
         }
 
         try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
-            List<TaskEntity> entites = testee.selectAllTasks();
+            List<TaskEntity> entites = testee.selectAllTasks("guest");
 
             assertEquals(1, entites.size());
             assertEquals("Test Title", entites.get(0).getTitle());
             assertEquals("Test Description", entites.get(0).getDescription());
         }
     }
+
+    @Test
+    void testPaging() {
+        ApplicationModule module = new ApplicationModule();
+        Instant timestamp = Instant.parse("2024-01-01T00:00:00Z");
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            for (int i = 0; i < 5; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setNewTaskId();
+                entity.setUserId("guest");
+                entity.setTimestamp(i < 3 ? timestamp : timestamp.plusSeconds(i)); // three tasks share a timestamp
+                entity.setTitle("Task " + i);
+                testee.createTask(entity);
+            }
+        }
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            List<TaskEntity> all = testee.selectTasks("guest", null, 10);
+            assertEquals(5, all.size());
+
+            List<TaskEntity> page1 = testee.selectTasks("guest", null, 2);
+            List<TaskEntity> page2 = testee.selectTasks("guest", TaskCursor.of(page1.get(1)), 2);
+            List<TaskEntity> page3 = testee.selectTasks("guest", TaskCursor.parse(TaskCursor.of(page2.get(1)).toString()), 2);
+
+            assertEquals(all.subList(0, 2).stream().map(TaskEntity::getTaskId).toList(), page1.stream().map(TaskEntity::getTaskId).toList());
+            assertEquals(all.subList(2, 4).stream().map(TaskEntity::getTaskId).toList(), page2.stream().map(TaskEntity::getTaskId).toList());
+            assertEquals(all.subList(4, 5).stream().map(TaskEntity::getTaskId).toList(), page3.stream().map(TaskEntity::getTaskId).toList());
+        }
+    }
+
+    @Test
+    void testConcurrentLoad() throws Exception {
+        ApplicationModule module = new ApplicationModule() {
+            @Override
+            public ConfigProvider getConfigProvider() {
+                return new ConfigProvider() {
+                    @Override
+                    public Optional<String> getConfigProperty(String name) {
+                        return name.equals("app.jdbc.pool.max") ? Optional.of("4") : super.getConfigProperty(name);
+                    }
+                };
+            }
+        };
+        try {
+            // without permits, so that the 32 clients compete for the 4 connections of the pool itself
+            List<Callable<Void>> clients = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                clients.add(() -> {
+                    for (int j = 0; j < 20; j++) {
+                        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+                            TaskEntity entity = new TaskEntity();
+                            entity.setNewTaskId();
+                            entity.setUserId("guest");
+                            entity.setTimestamp(Instant.now());
+                            testee.createTask(entity);
+                            testee.selectTasks("guest", null, 10);
+                            Thread.sleep(2); // hold the connection, so that other clients have to wait for it
+                        }
+                    }
+                    return null;
+                });
+            }
+            try(ExecutorService executor = Executors.newFixedThreadPool(32)) {
+                for (Future<Void> result : executor.invokeAll(clients)) {
+                    result.get();
+                }
+            }
+
+            PoolMetrics.Snapshot metrics = module.getPoolMetrics().snapshot();
+            assertEquals(4, metrics.max());
+            assertTrue(metrics.total() <= 4);
+            assertEquals(0, metrics.pending());
+            assertEquals(0, metrics.timeouts());
+            assertTrue(metrics.acquired() >= 32 * 20);
+            assertTrue(metrics.acquireMaxMillis() >= 1, "clients waited for connections: " + metrics);
+        } finally {
+            module.close();
+        }
+    }
+
+    @Test
+    void testPermitTimeout() {
+        Semaphore permits = new Semaphore(1);
+        try(TaskRepository holder = new TaskRepository(module.getEntityManagerFactory(), permits, 10)) {
+            HttpException e = assertThrows(HttpException.RuntimeException.class,
+                    () -> new TaskRepository(module.getEntityManagerFactory(), permits, 10));
+            assertEquals(503, e.getCode());
+        }
+        assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    void testUsers() {
+        ApplicationModule module = new ApplicationModule();
+        Instant timestamp = Instant.parse("2024-01-01T00:00:00Z");
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            for (int i = 0; i < 4; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setTaskId("task" + i);
+                entity.setUserId(i < 3 ? "large" : "small");
+                entity.setTimestamp(timestamp.plusSeconds(i));
+                entity.setTitle("Task " + i);
+                testee.createTask(entity);
+            }
+        }
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(List.of("task2", "task1", "task0"), taskIds(testee.selectTasks("large", null, 10)));
+            assertEquals(List.of("task1"), taskIds(testee.selectTasks("large", new TaskCursor(timestamp.plusSeconds(2), "task2"), 1)));
+            assertEquals(List.of("task3"), taskIds(testee.selectTasks("small", null, 10)));
+            assertEquals(List.of("task3"), taskIds(testee.selectTasksMatching("small", new TaskQuery("task", null, null, null), null, 10)));
+            assertEquals(new TaskListVersion(1, timestamp.plusSeconds(3)), testee.selectTaskListVersion("small"));
+            assertEquals(new TaskListVersion(0, null), testee.selectTaskListVersion("other"));
+            assertNull(testee.selectTaskById("small", "task0"));
+            assertEquals(List.of("task3"), taskIds(testee.selectTasksByIds("small", List.of("task0", "task3"))));
+            assertEquals(List.of("task3"), testee.selectTaskIds("small", List.of("task0", "task3")));
+        }
+    }
+
+    @Test
+    void testVersions() {
+        ApplicationModule module = new ApplicationModule();
+        TaskEntity entity = new TaskEntity();
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            entity.setNewTaskId();
+            entity.setUserId("guest");
+            entity.setTimestamp(Instant.parse("2024-01-01T00:00:00Z"));
+            entity.setTitle("Versioned task");
+            testee.createTask(entity);
+        }
+        assertEquals(0L, entity.getVersion());
+
+        TaskRepository first = new TaskRepository(module.getEntityManagerFactory());
+        TaskEntity firstEntity = first.selectTaskById("guest", entity.getTaskId());
+        try(TaskRepository second = new TaskRepository(module.getEntityManagerFactory())) {
+            second.selectTaskById("guest", entity.getTaskId()).setTitle("Second title");
+        }
+        firstEntity.setTitle("First title");
+        assertThrows(OptimisticLockException.class, first::close);
+
+        Instant timestamp = Instant.parse("2024-01-02T00:00:00Z");
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            TaskEntity loaded = testee.selectTaskById("guest", entity.getTaskId());
+            TaskEntity done = testee.updateTaskDone("guest", entity.getTaskId(), true, timestamp, null);
+            assertSame(loaded, done);
+            assertTrue(done.isDone());
+            assertEquals("Second title", done.getTitle());
+            assertEquals(2L, done.getVersion());
+            assertNull(testee.updateTaskDone("other", entity.getTaskId(), true, timestamp, null));
+            assertNull(testee.updateTaskDone("guest", entity.getTaskId(), false, timestamp, entity.getTimestamp()));
+        }
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            TaskEntity updated = testee.selectTaskById("guest", entity.getTaskId());
+            assertEquals("Second title", updated.getTitle());
+            assertTrue(updated.isDone());
+            assertEquals(timestamp, updated.getTimestamp());
+            assertEquals(2L, updated.getVersion());
+            assertEquals(List.of(updated.getTaskId()), testee.selectTasksMatching("guest", TaskQuery.parse("second", null, null, null), null, 10).stream().map(TaskEntity::getTaskId).toList());
+            assertEquals(List.of(), testee.selectTasksMatching("guest", TaskQuery.parse("second", null, null, "2024-01-02T00:00:00Z"), null, 10));
+        }
+    }
+
+    @Test
+    void testSearch() {
+        ApplicationModule module = new ApplicationModule();
+        Instant timestamp = Instant.parse("2024-01-01T00:00:00Z");
+        String[] titles = { "Water the plants", "Buy plants and soil", "Repot the plants", "Call the plumber" };
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            for (int i = 0; i < titles.length; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setTaskId("task" + i);
+                entity.setUserId("guest");
+                entity.setTimestamp(timestamp.plusSeconds(i));
+                entity.setTitle(titles[i]);
+                entity.setDone(i == 1);
+                testee.createTask(entity);
+            }
+        }
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(List.of("task2", "task1", "task0"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("Plants!", null, null, null), null, 10)));
+            assertEquals(List.of("task1"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("plants SOIL", null, null, null), null, 10)));
+            assertEquals(List.of("task2", "task0"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("plants", false, null, null), null, 10)));
+            assertEquals(List.of("task1"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("plants", null, timestamp.plusSeconds(1), timestamp.plusSeconds(2)), null, 10)));
+            assertEquals(List.of("task3", "task2"), taskIds(testee.selectTasksMatching("guest", new TaskQuery(null, false, timestamp.plusSeconds(1), null), null, 10)));
+            assertEquals(List.of("task0"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("the plants", null, null, null), new TaskCursor(timestamp.plusSeconds(2), "task2"), 10)));
+
+            testee.selectTaskById("guest", "task0").setTitle("Water the flowers");
+            testee.deleteTask(testee.selectTaskById("guest", "task2"));
+        }
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(List.of("task1"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("plants", null, null, null), null, 10)));
+            assertEquals(List.of("task0"), taskIds(testee.selectTasksMatching("guest", new TaskQuery("flowers", null, null, null), null, 10)));
+            testee.deleteTasksByIds(List.of("task0", "task1", "task3"));
+        }
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(0, testee.selectTasksMatching("guest", new TaskQuery("the", null, null, null), null, 10).size());
+        }
+    }
+
+    @Test
+    void testFillSearchIndex() {
+        ApplicationModule module = new ApplicationModule();
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            for (int i = 0; i < 2500; i++) {
+                TaskEntity entity = new TaskEntity();
+                entity.setNewTaskId();
+                entity.setUserId("guest");
+                entity.setTimestamp(Instant.now());
+                entity.setTitle("Task " + i);
+                testee.createTask(entity);
+            }
+        }
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(0, testee.fillSearchIndex());
+        }
+
+        EntityManager em = module.getEntityManagerFactory().createEntityManager();
+        em.getTransaction().begin();
+        em.createQuery("delete from TaskWordEntity").executeUpdate();
+        em.getTransaction().commit();
+        em.close();
+
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(0, testee.selectTasksMatching("guest", new TaskQuery("task", null, null, null), null, 10).size());
+            assertEquals(2500, testee.fillSearchIndex());
+        }
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertEquals(List.of("Task 1234"), testee.selectTasksMatching("guest", new TaskQuery("1234", null, null, null), null, 10).stream().map(TaskEntity::getTitle).toList());
+        }
+    }
+
+    @Test
+    void testMigrations() {
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertTrue(testee.isMigrationApplied("task-versions")); // at startup
+            assertTrue(testee.isMigrationApplied("task-words"));
+            assertTrue(testee.beginMigration("test"));
+        }
+        try(TaskRepository testee = new TaskRepository(module.getEntityManagerFactory())) {
+            assertFalse(testee.beginMigration("test"));
+        }
+    }
+
+    @Test
+    void testSchemaValidation() {
+        String url = "jdbc:h2:mem:validation;DB_CLOSE_DELAY=-1";
+        ApplicationModule validating = createModule(url, "validate");
+        assertThrows(PersistenceException.class, validating::getEntityManagerFactory);
+        validating.close();
+
+        ApplicationModule updating = createModule(url, "update");
+        updating.getEntityManagerFactory();
+        updating.close();
+
+        validating = createModule(url, "validate");
+        try(TaskRepository testee = new TaskRepository(validating.getEntityManagerFactory())) {
+            assertEquals(0, testee.selectAllTasks("guest").size());
+        }
+        validating.close();
+    }
+
+    private static List<String> taskIds(List<TaskEntity> entities) {
+        return entities.stream().map(TaskEntity::getTaskId).toList();
+    }
+
+    private static ApplicationModule createModule(String url, String schema) {
+        return new ApplicationModule() {
+            @Override
+            public ConfigProvider getConfigProvider() {
+                return new ConfigProvider() {
+                    @Override
+                    public Optional<String> getConfigProperty(String name) {
+                        return switch(name) {
+                            case "app.jdbc.url" -> Optional.of(url);
+                            case "app.jdbc.schema" -> Optional.of(schema);
+                            default -> super.getConfigProperty(name);
+                        };
+                    }
+                };
+            }
+        };
+    }
 }
@@ -0,0 +1,91 @@
+package com.github.phoswald.sample.task;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.ApplicationModule;
+
+/**
+ * Searches pages of 100 tasks in in-memory H2. Every task has one rare word (shared by one in 10000 tasks) and one
+ * common word (shared by one in 10 tasks), so the cost of looking up words and of filtering the matches can be told
+ * apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskSearchBenchmark {
+
+    @Param({ "100000" })
+    private int tasks;
+
+    private final ApplicationModule module = new ApplicationModule();
+    private Instant middle;
+
+    @Setup
+    public void setup() {
+        Instant start = Instant.now().minusSeconds(tasks);
+        middle = start.plusSeconds(tasks / 2);
+        for (int chunk = 0; chunk < tasks; chunk += 1000) {
+            try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+                for (int i = chunk; i < Math.min(chunk + 1000, tasks); i++) {
+                    TaskEntity task = new TaskEntity();
+                    task.setNewTaskId();
+                    task.setUserId("guest");
+                    task.setTimestamp(start.plusSeconds(i));
+                    task.setTitle("Task " + i);
+                    task.setDescription("Description with rare" + i % 10000 + " and common" + i % 10);
+                    task.setDone(i % 2 == 0);
+                    repository.createTask(task);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        module.close();
+    }
+
+    @Benchmark
+    public List<TaskEntity> rareWord() {
+        return search(new TaskQuery("rare42", null, null, null));
+    }
+
+    @Benchmark
+    public List<TaskEntity> commonWord() {
+        return search(new TaskQuery("common7", null, null, null));
+    }
+
+    @Benchmark
+    public List<TaskEntity> commonWordDoneBefore() {
+        return search(new TaskQuery("common7", false, null, middle));
+    }
+
+    @Benchmark
+    public List<TaskEntity> doneBefore() {
+        return search(new TaskQuery(null, true, null, middle));
+    }
+
+    private List<TaskEntity> search(TaskQuery query) {
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            return repository.selectTasksMatching("guest", query, null, 100);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.phoswald.sample.task;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phoswald.sample.ApplicationModule;
+import com.github.phoswald.sample.utils.ConfigProvider;
+
+/**
+ * Creates tasks from 16 threads against a file-based H2 database that writes every commit through to the file, like a
+ * durable database, with every write committed on its own (<code>maxDelay</code> 0) or in groups. Throughput shows
+ * the commits saved, sample time the latency added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class TaskWriteBufferBenchmark {
+
+    @Param({ "0", "1", "2", "5" })
+    public String maxDelay;
+
+    private Path directory;
+    private ApplicationModule module;
+    private TaskResource resource;
+    private final TaskEntity request = new TaskEntity();
+
+    @Setup
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("tasks");
+        String url = "jdbc:h2:" + directory.resolve("db") + ";WRITE_DELAY=0";
+        module = new ApplicationModule() {
+            @Override
+            public ConfigProvider getConfigProvider() {
+                return new ConfigProvider() {
+                    @Override
+                    public Optional<String> getConfigProperty(String name) {
+                        return switch(name) {
+                            case "app.jdbc.url" -> Optional.of(url);
+                            case "app.jdbc.group-commit.max-delay" -> Optional.of(maxDelay);
+                            default -> super.getConfigProperty(name);
+                        };
+                    }
+                };
+            }
+        };
+        resource = module.getTaskResource();
+        request.setTitle("Benchmark task");
+        request.setDescription("Description of the benchmark task");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        module.close();
+        try(var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public TaskEntity postTask() {
+        return resource.postTasks("guest", request);
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.phoswald.sample.task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.phoswald.sample.ApplicationModule;
+
+class TaskWriteBufferTest {
+
+    private static final ApplicationModule module = new ApplicationModule();
+
+    private TaskWriteBuffer testee;
+
+    @AfterEach
+    void cleanup() {
+        testee.close();
+    }
+
+    @Test
+    void submitGrouped() throws Exception {
+        testee = new TaskWriteBuffer(module.getTaskRepositoryFactory(), 10, Duration.ofSeconds(10), null);
+        CountDownLatch latch = blockWriter();
+        List<CompletableFuture<TaskEntity>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String title = "Grouped task " + i;
+            results.add(testee.submit(repository -> createTask(repository, "grouped", title)));
+        }
+        latch.countDown();
+
+        results.forEach(CompletableFuture::join);
+        assertEquals(2, testee.groups());
+        assertEquals(11, testee.writes());
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            assertEquals(10, repository.selectAllTasks("grouped").size());
+        }
+    }
+
+    @Test
+    void submitFailing() throws Exception {
+        testee = new TaskWriteBuffer(module.getTaskRepositoryFactory(), 3, Duration.ofSeconds(10), null);
+        CountDownLatch latch = blockWriter();
+        CompletableFuture<TaskEntity> first = testee.submit(repository -> createTask(repository, "failing", "First task"));
+        CompletableFuture<TaskEntity> failing = testee.submit(repository -> {
+            createTask(repository, "failing", "Failing task");
+            throw new IllegalArgumentException("Invalid task");
+        });
+        CompletableFuture<TaskEntity> last = testee.submit(repository -> createTask(repository, "failing", "Last task"));
+        latch.countDown();
+
+        assertEquals("First task", first.join().getTitle());
+        assertEquals("Last task", last.join().getTitle());
+        CompletionException e = assertThrows(CompletionException.class, failing::join);
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertEquals(3, testee.groups()); // the group failed, and the other writes were committed one by one
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            assertEquals(List.of("First task", "Last task"), repository.selectAllTasks("failing").stream().map(TaskEntity::getTitle).sorted().toList());
+        }
+    }
+
+    @Test
+    void submitConflicting() throws Exception {
+        testee = new TaskWriteBuffer(module.getTaskRepositoryFactory(), 10, Duration.ofSeconds(10), null);
+        TaskEntity task;
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            task = createTask(repository, "conflicting", "Original task");
+        }
+        Long version = task.getVersion();
+        CountDownLatch latch = blockWriter();
+        CompletableFuture<String> first = testee.submit(repository -> updateTask(repository, task.getTaskId(), version, "First update"));
+        CompletableFuture<String> second = testee.submit(repository -> updateTask(repository, task.getTaskId(), version, "Second update"));
+        latch.countDown();
+
+        assertEquals("updated", first.join());
+        assertEquals("conflict", second.join()); // both in the same group, but the second saw the new version
+        assertEquals(2, testee.groups());
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            assertEquals("First update", repository.selectTaskById("conflicting", task.getTaskId()).getTitle());
+        }
+    }
+
+    @Test
+    void submitSameTask() throws Exception {
+        testee = new TaskWriteBuffer(module.getTaskRepositoryFactory(), 10, Duration.ofSeconds(10), null);
+        TaskEntity task;
+        try(TaskRepository repository = module.getTaskRepositoryFactory().get()) {
+            task = createTask(repository, "same", "Original task");
+        }
+        CountDownLatch latch = blockWriter();
+        CompletableFuture<TaskEntity> first = testee.submit(repository -> renameTask(repository, "same", task.getTaskId(), "First update"));
+        CompletableFuture<TaskEntity> second = testee.submit(repository -> renameTask(repository, "same", task.getTaskId(), "Second update"));
+        latch.countDown();
+
+        assertEquals("First update", first.join().getTitle()); // not changed by the second write of the same group
+        assertEquals("Second update", second.join().getTitle());
+        assertEquals(2, testee.groups());
+    }
+
+    @Test
+    void close() {
+        testee = new TaskWriteBuffer(module.getTaskRepositoryFactory(), 10, Duration.ofSeconds(10), null);
+        CompletableFuture<TaskEntity> result = testee.submit(repository -> createTask(repository, "closed", "Queued task"));
+
+        testee.close(); // does not wait for the delay or more writes
+
+        assertEquals("Queued task", result.join().getTitle());
+        assertThrows(IllegalStateException.class, () -> testee.submit(repository -> null));
+    }
+
+    /**
+     * Submits a write that blocks the writer until the returned latch is released, so the writes submitted meanwhile
+     * are queued and form the next group.
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        testee.submit(repository -> {
+            started.countDown();
+            try {
+                return latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+        return latch;
+    }
+
+    private static TaskEntity createTask(TaskRepository repository, String userId, String title) {
+        TaskEntity task = new TaskEntity();
+        task.setNewTaskId();
+        task.setUserId(userId);
+        task.setTimestamp(Instant.now());
+        task.setTitle(title);
+        repository.createTask(task);
+        return task;
+    }
+
+    private static TaskEntity renameTask(TaskRepository repository, String userId, String taskId, String title) {
+        TaskEntity task = repository.selectTaskById(userId, taskId);
+        task.setTimestamp(Instant.now());
+        task.setTitle(title);
+        return task;
+    }
+
+    private static String updateTask(TaskRepository repository, String taskId, Long expectedVersion, String title) {
+        TaskEntity task = repository.selectTaskById("conflicting", taskId);
+        if (!expectedVersion.equals(task.getVersion())) {
+            return "conflict";
+        }
+        task.setTimestamp(Instant.now());
+        task.setTitle(title);
+        return "updated";
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.phoswald.sample.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+    private final Metrics testee = new Metrics();
+
+    @Test
+    void bucketOf() {
+        assertEquals(0, Metrics.Histogram.bucketOf(0));
+        assertEquals(0, Metrics.Histogram.bucketOf(64));
+        assertEquals(1, Metrics.Histogram.bucketOf(65));
+        assertEquals(1, Metrics.Histogram.bucketOf(96));
+        assertEquals(2, Metrics.Histogram.bucketOf(97));
+        assertEquals(2, Metrics.Histogram.bucketOf(128));
+        assertEquals(3, Metrics.Histogram.bucketOf(129));
+        assertEquals(40, Metrics.Histogram.bucketOf(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    void bucketOfWithinUpperBound() {
+        for (int bucket = 0; bucket < 40; bucket++) {
+            long upper = Metrics.Histogram.upperBoundMicros(bucket);
+            assertEquals(bucket, Metrics.Histogram.bucketOf(upper));
+            assertEquals(bucket + 1, Metrics.Histogram.bucketOf(upper + 1));
+        }
+    }
+
+    @Test
+    void counterRegisteredOnce() {
+        Metrics.Counter counter = testee.counter("requests_total", "Requests.", "route", "GET /");
+        assertSame(counter, testee.counter("requests_total", "Requests.", "route", "GET /"));
+        assertThrows(IllegalArgumentException.class, () -> testee.histogram("requests_total", "Requests."));
+    }
+
+    @Test
+    void write() throws IOException {
+        testee.counter("requests_total", "Requests.", "route", "GET \"/\"").increment();
+        testee.gauge("threads", "Threads.", () -> 4);
+        Metrics.Histogram histogram = testee.histogram("duration_seconds", "Duration.", "route", "GET /");
+        histogram.record(50_000);
+        histogram.record(100_000);
+        histogram.record(1_500_000_000);
+
+        StringWriter writer = new StringWriter();
+        testee.write(writer);
+        String text = writer.toString();
+
+        assertTrue(text.contains("# TYPE requests_total counter\nrequests_total{route=\"GET \\\"/\\\"\"} 1\n"), text);
+        assertTrue(text.contains("# HELP threads Threads.\n# TYPE threads gauge\nthreads 4\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{route=\"GET /\",le=\"0.000064\"} 1\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{route=\"GET /\",le=\"0.000128\"} 2\n"), text);
+        assertTrue(text.contains("duration_seconds_bucket{route=\"GET /\",le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("duration_seconds_sum{route=\"GET /\"} 1.50015\n"), text);
+        assertTrue(text.contains("duration_seconds_count{route=\"GET /\"} 3\n"), text);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.phoswald.sample.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final RateLimiter testee = new RateLimiter(10, 2, 1, clock::get);
+
+    @Test
+    void tryAcquireBurst() {
+        assertTrue(testee.tryAcquire("a"));
+        assertTrue(testee.tryAcquire("a"));
+        assertFalse(testee.tryAcquire("a"));
+    }
+
+    @Test
+    void tryAcquireRefilled() {
+        testee.tryAcquire("a");
+        testee.tryAcquire("a");
+        clock.set(100_000_000); // one permit after 100 ms
+        assertTrue(testee.tryAcquire("a"));
+        assertFalse(testee.tryAcquire("a"));
+    }
+
+    @Test
+    void tryAcquirePerKey() {
+        testee.tryAcquire("a");
+        testee.tryAcquire("a");
+        assertFalse(testee.tryAcquire("a"));
+        assertTrue(testee.tryAcquire("b"));
+    }
+
+    @Test
+    void tryAcquireDropsFullBuckets() {
+        testee.tryAcquire("a");
+        testee.tryAcquire("a");
+        testee.tryAcquire("b");
+        clock.set(1_000_000_000); // both buckets are full again and dropped
+        assertTrue(testee.tryAcquire("c"));
+        assertEquals(1, testee.size());
+        assertTrue(testee.tryAcquire("a"));
+        assertTrue(testee.tryAcquire("a"));
+    }
+
+    @Test
+    void tryAcquireSweepsWhenDoubled() {
+        RateLimiter testee = new RateLimiter(10, 2, 2, clock::get);
+        for (String key : List.of("a", "b", "c", "d")) {
+            testee.tryAcquire(key); // none is full, so the sweep before d is added keeps the three others
+        }
+        clock.set(1_000_000_000); // the buckets so far are full again
+        for (String key : List.of("e", "f", "g")) {
+            testee.tryAcquire(key); // no sweep up to twice the three buckets left
+        }
+        assertEquals(7, testee.size());
+        testee.tryAcquire("h"); // the sweep drops a to d
+        assertEquals(4, testee.size());
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.phoswald.sample.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RouterTest {
+
+    private final Router<String> testee = new Router<String>() //
+            .add("GET", "/app/rest/tasks", "list") //
+            .add("GET", "/app/rest/tasks/{id}", "get") //
+            .add("PUT", "/app/rest/tasks/{id}", "put") //
+            .add("GET", "/app/rest/tasks/search", "search") //
+            .add("GET", "/app/rest/tasks/{id}/history", "history");
+
+    @Test
+    void matchLiteral() {
+        Router.Match<String> match = testee.match("GET", "/app/rest/tasks");
+        assertEquals("list", match.target());
+        assertEquals(Map.of(), match.variables());
+    }
+
+    @Test
+    void matchVariable() {
+        Router.Match<String> match = testee.match("PUT", "/app/rest/tasks/abc-123");
+        assertEquals("put", match.target());
+        assertEquals(Map.of("id", "abc-123"), match.variables());
+    }
+
+    @Test
+    void matchLiteralBeforeVariable() {
+        assertEquals("search", testee.match("GET", "/app/rest/tasks/search").target());
+        assertEquals("history", testee.match("GET", "/app/rest/tasks/search/history").target());
+        assertEquals(Map.of("id", "search"), testee.match("GET", "/app/rest/tasks/search/history").variables());
+    }
+
+    @Test
+    void matchNone() {
+        assertNull(testee.match("DELETE", "/app/rest/tasks/abc"));
+        assertNull(testee.match("GET", "/app/rest/tasks/"));
+        assertNull(testee.match("GET", "/app/rest/tasks/abc/def"));
+        assertNull(testee.match("GET", "/app/rest"));
+        assertNull(testee.match("GET", "/"));
+    }
+
+    @Test
+    void addDuplicate() {
+        assertThrows(IllegalArgumentException.class, () -> testee.add("GET", "/app/rest/tasks/{id}", "other"));
+        assertThrows(IllegalArgumentException.class, () -> testee.add("POST", "/app/rest/tasks/{taskId}", "other"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.phoswald.sample.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jakarta.xml.bind.DataBindingException;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phoswald.sample.sample.EchoRequest;
+import com.github.phoswald.sample.sample.EchoResponse;
+
+class XmlCodecTest {
+
+    private final XmlCodec testee = new XmlCodec(EchoRequest.class, EchoResponse.class);
+
+    @Test
+    void marshalWithInferredRootElement() {
+        EchoResponse response = new EchoResponse();
+        response.setOutput("Test Output");
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<echoResponse>\n    <output>Test Output</output>\n</echoResponse>\n",
+                marshal(response));
+    }
+
+    @Test
+    void marshalWithRootElement() {
+        Annotated annotated = new Annotated();
+        annotated.value = "Test Value";
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<annotated>\n    <value>Test Value</value>\n</annotated>\n",
+                marshal(annotated));
+    }
+
+    @Test
+    void unmarshal() {
+        EchoRequest request = unmarshal("<echoRequest><input>Test Input</input></echoRequest>");
+        assertEquals("Test Input", request.getInput());
+    }
+
+    @Test
+    void unmarshalInvalid() {
+        assertThrows(DataBindingException.class, () -> unmarshal("<echoRequest><input>"));
+        assertEquals("Test Input", unmarshal("<echoRequest><input>Test Input</input></echoRequest>").getInput());
+    }
+
+    @Test
+    void unmarshalConcurrently() throws Exception {
+        try(ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String input = "Input " + i;
+                results.add(executor.submit(() -> unmarshal("<echoRequest><input>" + input + "</input></echoRequest>").getInput()));
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("Input " + i, results.get(i).get());
+            }
+        }
+    }
+
+    private String marshal(Object object) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        testee.marshal(object, stream);
+        return stream.toString(StandardCharsets.UTF_8);
+    }
+
+    private EchoRequest unmarshal(String xml) {
+        return testee.unmarshal(EchoRequest.class, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @XmlRootElement
+    public static class Annotated {
+        public String value;
+    }
+}